@@ -0,0 +1,35 @@
+package com.idea;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @ClassName: BenchmarkMain
+ * @Description: 基准测试入口，参数与JMH命令行一致（如指定 ProcessLine 只运行单行处理的测试），
+ *      在此基础上总是加上GC分配分析（-prof gc），结果中同时给出吞吐量和每次操作分配的字节数。<br>
+ *      用法：java -jar target/benchmarks.jar [JMH参数]
+ * @Author: yuanbao
+ * @Date: 2025/4/1
+ **/
+public class BenchmarkMain
+{
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        // 查看帮助、列出测试等不运行测试的命令，直接交给JMH处理
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers() || cmd.shouldListResultFormats())
+        {
+            Main.main(args);
+            return;
+        }
+        Options options = new OptionsBuilder()
+                .parent(cmd)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
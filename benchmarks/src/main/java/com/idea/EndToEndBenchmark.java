@@ -0,0 +1,169 @@
+package com.idea;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * @ClassName: EndToEndBenchmark
+ * @Description: 对整个日志目录端到端运行 {@link LogAnalyzer2}（与命令行调用相同，包括写报告），计时并输出 MB/s、行/s 和堆内存峰值。<br>
+ *      日志目录通常由 {@link LogCorpusGenerator} 生成，总行数取自其中的 corpus.properties；没有该文件时分析结束后再数一遍行数（不计入耗时）。
+ *      MB/s、行/s 按目录下全部日志计算，开启按日期定位时跳过的内容也计算在内，即相当于完整读取这些日志的速度。
+ *      报告写入临时目录，每轮结束后删除。<br>
+ *      用法：java -cp target/benchmarks.jar com.idea.EndToEndBenchmark 日志目录 分析日期 [--runs=N] [LogAnalyzer2的可选参数 ...]
+ *      如：... EndToEndBenchmark corpus 20250331 --runs=3 --parallelism=8
+ * @Author: yuanbao
+ * @Date: 2025/4/2
+ **/
+public class EndToEndBenchmark
+{
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("用法：EndToEndBenchmark 日志目录 分析日期 [--runs=N] [LogAnalyzer2的可选参数 ...]");
+            throw new RuntimeException("缺少日志目录或分析日期参数");
+        }
+        Path logDir = Paths.get(args[0]);
+        String date = args[1];
+        int runs = 3;
+        List<String> analyzerOptions = new ArrayList<>();
+        for (int i = 2; i < args.length; i++)
+        {
+            if (args[i].startsWith("--runs="))
+                runs = Integer.parseInt(args[i].substring("--runs=".length()));
+            else
+                analyzerOptions.add(args[i]);
+        }
+
+        long bytes = inputBytes(logDir);
+        long lines = -1;
+        Path infoFile = logDir.resolve(LogCorpusGenerator.INFO_FILE);
+        if (Files.exists(infoFile))
+        {
+            Properties info = new Properties();
+            try (Reader reader = Files.newBufferedReader(infoFile, StandardCharsets.UTF_8))
+            {
+                info.load(reader);
+            }
+            lines = Long.parseLong(info.getProperty("lines"));
+        }
+
+        List<String> results = new ArrayList<>();
+        double bestSeconds = Double.MAX_VALUE;
+        for (int run = 1; run <= runs; run++)
+        {
+            Path outputDir = Files.createTempDirectory("e2e_report");
+            System.gc();
+            resetHeapPeak();
+            long start = System.nanoTime();
+            List<String> analyzerArgs = new ArrayList<>();
+            analyzerArgs.add(date);
+            analyzerArgs.add(logDir.toString());
+            analyzerArgs.add(outputDir.toString());
+            analyzerArgs.addAll(analyzerOptions);
+            LogAnalyzer2.main(analyzerArgs.toArray(new String[0]));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long peakHeap = heapPeak();
+            deleteDirectory(outputDir);
+
+            if (lines < 0)
+                lines = countLines(logDir);
+            bestSeconds = Math.min(bestSeconds, seconds);
+            // 分析过程的输出较多，结果汇总到最后统一打印
+            results.add(String.format("第%d轮：%.2f s，%.1f MB/s，%.0f 行/s，堆内存峰值 %.1f MB", run, seconds,
+                    bytes / 1024.0 / 1024.0 / seconds, lines / seconds, peakHeap / 1024.0 / 1024.0));
+        }
+
+        System.out.println();
+        System.out.printf("日志目录：%s，%.1f MB，%d 行，参数：%s%n", logDir.toAbsolutePath(), bytes / 1024.0 / 1024.0, lines, analyzerOptions);
+        for (String result : results)
+        {
+            System.out.println(result);
+        }
+        System.out.printf("最快一轮：%.2f s，%.1f MB/s，%.0f 行/s%n", bestSeconds, bytes / 1024.0 / 1024.0 / bestSeconds, lines / bestSeconds);
+    }
+
+    /**
+     * 日志目录下全部日志文件的总字节数（压缩日志按压缩后的大小），筛选规则与 LogAnalyzer2 一致
+     */
+    private static long inputBytes(Path logDir) throws IOException
+    {
+        long bytes = 0;
+        for (Path file : logFiles(logDir))
+        {
+            bytes += Files.size(file);
+        }
+        return bytes;
+    }
+
+    private static long countLines(Path logDir) throws IOException
+    {
+        long lines = 0;
+        for (Path file : logFiles(logDir))
+        {
+            try (Stream<String> fileLines = Files.lines(file, StandardCharsets.UTF_8))
+            {
+                lines += fileLines.count();
+            }
+        }
+        return lines;
+    }
+
+    private static List<Path> logFiles(Path logDir) throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(logDir))
+        {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().matches(".*\\.(log(\\.\\d+)?(\\.gz)?|zip)$"))
+                    .forEach(files::add);
+        }
+        return files;
+    }
+
+    private static void resetHeapPeak()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * 各堆内存区峰值之和，各区的峰值不一定出现在同一时刻，因此略大于实际的峰值
+     */
+    private static long heapPeak()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException
+    {
+        try (Stream<Path> files = Files.list(dir))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,97 @@
+package com.idea;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @ClassName: ExcelReportBenchmark
+ * @Description: 生成Excel报告的基准测试，月模式下不同用户数的报告，结果为每分钟生成的报告数。<br>
+ *      workbook 为 sxssf 时即正式报告的流式写入，为 xssf 时用非流式的 XSSFWorkbook 写入同样的内容作为对比基线，
+ *      两者的吞吐量和 gc.alloc.rate.norm 之差即流式写入的收益。报告写入临时目录，测试结束后删除。
+ * @Author: yuanbao
+ * @Date: 2025/4/1
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+// 非流式写入10000个用户时整个工作簿都在内存中，堆需要足够大
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ExcelReportBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int users;
+
+    @Param({"sxssf", "xssf"})
+    public String workbook;
+
+    private Path outputDir;
+    private AnalysisWindow window;
+    private StatsCube stats;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        outputDir = Files.createTempDirectory("bench_report");
+        window = new AnalysisWindow(LocalDate.of(2025, 3, 1), LogAnalyzer2.AnalysisMode.MONTHLY);
+        stats = new StatsCube(window.bucketCount());
+        long[] days = new long[StatsCube.sliceLength(window.dayCount())];
+        for (int i = 0; i < days.length; i++)
+        {
+            days[i] = i % 97;
+        }
+        for (int user = 0; user < users; user++)
+        {
+            stats.addUserDays(stats.internUser("用户" + user), days, window);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.list(outputDir))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(outputDir);
+    }
+
+    @Benchmark
+    public Path generateExcelReport() throws IOException
+    {
+        if ("xssf".equals(workbook))
+        {
+            try (XSSFWorkbook xssf = new XSSFWorkbook())
+            {
+                LogAnalyzer2.writeExcelReport(xssf, stats, null, outputDir.toString(), "report_xssf", window, LogAnalyzer2.DEFAULT_RULES);
+            }
+        } else
+        {
+            LogAnalyzer2.generateExcelReport(stats, outputDir.toString(), window, LogAnalyzer2.DEFAULT_RULES);
+        }
+        return outputDir;
+    }
+}
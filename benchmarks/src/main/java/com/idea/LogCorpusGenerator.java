@@ -0,0 +1,288 @@
+package com.idea;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * @ClassName: LogCorpusGenerator
+ * @Description: 生成模拟的IDEA日志目录，用于没有真实日志时的性能测试。<br>
+ *      文件名与采集结果一致：机器名_系统用户名_真实用户名_idea.log，较早的日志在 .log.1、.log.2 等轮转文件中（数字越大越早）。
+ *      内容按时间顺序追加，可调整用户数、天数、每天行数、关键字命中比例、异常堆栈密度和行长分布；固定随机种子时生成的内容完全相同。
+ *      生成结束后在目录下写入 corpus.properties，记录总行数和总字节数，供 {@link EndToEndBenchmark} 计算吞吐量。<br>
+ *      用法：java -cp target/benchmarks.jar com.idea.LogCorpusGenerator 输出目录 [--名称=值 ...]
+ *      --users=N            用户数，默认10
+ *      --days=N             天数，默认30
+ *      --end-date=yyyy-MM-dd 最后一天，默认2025-03-31
+ *      --lines-per-day=N    每个用户每天的日志条数（不含堆栈行），默认5000
+ *      --size=M             总大小约M兆字节，指定时按其余参数估算每天的条数，忽略 --lines-per-day
+ *      --cosy-share=P       通义灵码关键字（写代码、提问）命中的比例，默认0.05
+ *      --copilot-share=P    Copilot关键字（写代码、提问）命中的比例，默认0.02
+ *      --stack-share=P      带异常堆栈的ERROR日志的比例，默认0.01
+ *      --stack-depth=N      每个异常堆栈的行数，默认30
+ *      --line-length=MIN-MAX 普通日志的行长（字符数）均匀分布的范围，默认80-240
+ *      --rotations=N        每个用户的轮转文件数，默认1（即 .log 之外还有一个 .log.1）
+ *      --seed=N             随机种子，默认20250401
+ * @Author: yuanbao
+ * @Date: 2025/4/2
+ **/
+public class LogCorpusGenerator
+{
+    // 生成结果的说明文件名
+    static final String INFO_FILE = "corpus.properties";
+    // 补齐行长所用的字符
+    private static final String FILLER = "abcdefghijklmnopqrstuvwxyz0123456789/._-=: ";
+    // 写文件的缓冲区大小
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private int users = 10;
+    private int days = 30;
+    private LocalDate endDate = LocalDate.of(2025, 3, 31);
+    private long linesPerDay = 5000;
+    private long sizeMb = 0;
+    private double cosyShare = 0.05;
+    private double copilotShare = 0.02;
+    private double stackShare = 0.01;
+    private int stackDepth = 30;
+    private int minLineLength = 80;
+    private int maxLineLength = 240;
+    private int rotations = 1;
+    private long seed = 20250401L;
+
+    private long totalLines;
+    private long totalBytes;
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("用法：LogCorpusGenerator 输出目录 [--users=N] [--days=N] [--end-date=yyyy-MM-dd] [--lines-per-day=N] [--size=M]"
+                    + " [--cosy-share=P] [--copilot-share=P] [--stack-share=P] [--stack-depth=N] [--line-length=MIN-MAX] [--rotations=N] [--seed=N]");
+            throw new RuntimeException("缺少输出目录参数");
+        }
+        LogCorpusGenerator generator = new LogCorpusGenerator();
+        for (int i = 1; i < args.length; i++)
+        {
+            generator.applyArg(args[i]);
+        }
+        generator.generate(Paths.get(args[0]));
+    }
+
+    private void applyArg(String arg)
+    {
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0)
+            throw new RuntimeException("参数格式应为 --名称=值。当前为：" + arg);
+        String name = arg.substring(2, eq);
+        String value = arg.substring(eq + 1).trim();
+        switch (name)
+        {
+            case "users":
+                users = Integer.parseInt(value);
+                break;
+            case "days":
+                days = Integer.parseInt(value);
+                break;
+            case "end-date":
+                endDate = LocalDate.parse(value);
+                break;
+            case "lines-per-day":
+                linesPerDay = Long.parseLong(value);
+                break;
+            case "size":
+                sizeMb = Long.parseLong(value);
+                break;
+            case "cosy-share":
+                cosyShare = Double.parseDouble(value);
+                break;
+            case "copilot-share":
+                copilotShare = Double.parseDouble(value);
+                break;
+            case "stack-share":
+                stackShare = Double.parseDouble(value);
+                break;
+            case "stack-depth":
+                stackDepth = Integer.parseInt(value);
+                break;
+            case "line-length":
+                int dash = value.indexOf('-');
+                minLineLength = Integer.parseInt(value.substring(0, dash));
+                maxLineLength = Integer.parseInt(value.substring(dash + 1));
+                break;
+            case "rotations":
+                rotations = Integer.parseInt(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            default:
+                throw new RuntimeException("未知的参数：" + arg);
+        }
+        if (users < 1 || days < 1 || rotations < 0 || minLineLength > maxLineLength || cosyShare + copilotShare + stackShare > 1)
+            throw new RuntimeException("参数取值不合理：" + arg);
+    }
+
+    /**
+     * 在目录下生成全部日志文件
+     */
+    void generate(Path dir) throws IOException
+    {
+        Files.createDirectories(dir);
+        if (sizeMb > 0)
+        {
+            // 按平均每条日志的字节数估算：普通行取行长中值，异常日志再加上堆栈
+            double bytesPerEntry = (minLineLength + maxLineLength) / 2.0 + 1 + stackShare * stackDepth * 80;
+            linesPerDay = Math.max(1, (long) (sizeMb * 1024 * 1024 / bytesPerEntry / users / days));
+        }
+        System.out.printf("生成日志：%d 个用户，%d 天，每天 %d 条，输出到 %s%n", users, days, linesPerDay, dir.toAbsolutePath());
+
+        Random random = new Random(seed);
+        LocalDate firstDate = endDate.minusDays(days - 1);
+        for (int user = 1; user <= users; user++)
+        {
+            String baseName = String.format("DESKTOP-%04d_dev%04d_用户%04d_idea.log", user, user, user);
+            // 天数平均分配到各个文件，最早的在编号最大的轮转文件中
+            int files = rotations + 1;
+            for (int f = 0; f < files; f++)
+            {
+                int fromDay = days * f / files;
+                int toDay = days * (f + 1) / files;
+                String fileName = f == files - 1 ? baseName : baseName + "." + (files - 1 - f);
+                writeFile(dir.resolve(fileName), firstDate.plusDays(fromDay), toDay - fromDay, random);
+            }
+        }
+
+        Properties info = new Properties();
+        info.setProperty("lines", Long.toString(totalLines));
+        info.setProperty("bytes", Long.toString(totalBytes));
+        info.setProperty("firstDate", firstDate.toString());
+        info.setProperty("endDate", endDate.toString());
+        try (Writer writer = Files.newBufferedWriter(dir.resolve(INFO_FILE), StandardCharsets.UTF_8))
+        {
+            info.store(writer, "LogCorpusGenerator");
+        }
+        System.out.printf("生成完成：%d 行，%.1f MB%n", totalLines, totalBytes / 1024.0 / 1024.0);
+    }
+
+    /**
+     * 写入一个日志文件，从 firstDate 开始共 dayCount 天，每天的日志按时间顺序排列
+     */
+    private void writeFile(Path file, LocalDate firstDate, int dayCount, Random random) throws IOException
+    {
+        StringBuilder line = new StringBuilder(maxLineLength + 64);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE))
+        {
+            for (int d = 0; d < dayCount; d++)
+            {
+                String date = firstDate.plusDays(d).toString();
+                for (long i = 0; i < linesPerDay; i++)
+                {
+                    // 当天的时刻随行号递增
+                    int millisOfDay = (int) (i * 86_400_000L / linesPerDay);
+                    line.setLength(0);
+                    appendPrefix(line, date, millisOfDay, random.nextInt(10_000_000));
+
+                    double dice = random.nextDouble();
+                    if (dice < cosyShare)
+                    {
+                        line.append("INFO - ").append(SampleLines.MATCHING[random.nextInt(2)]);
+                    } else if (dice < cosyShare + copilotShare)
+                    {
+                        line.append("INFO - ").append(SampleLines.MATCHING[2 + random.nextInt(2)]);
+                    } else if (dice < cosyShare + copilotShare + stackShare)
+                    {
+                        line.append("ERROR - #c.i.o.a.i.ApplicationImpl - ").append(SampleLines.STACK_TRACE[0]);
+                        writeLine(writer, line);
+                        writeStackTrace(writer, line, random);
+                        continue;
+                    } else
+                    {
+                        line.append("INFO - ").append(SampleLines.ORDINARY[random.nextInt(SampleLines.ORDINARY.length)]);
+                        pad(line, minLineLength + random.nextInt(maxLineLength - minLineLength + 1), random);
+                    }
+                    writeLine(writer, line);
+                }
+            }
+        }
+    }
+
+    /**
+     * 异常堆栈：以 at 开头的调用栈，末尾为 Caused by 和省略行
+     */
+    private void writeStackTrace(Writer writer, StringBuilder line, Random random) throws IOException
+    {
+        int frames = SampleLines.STACK_TRACE.length - 3; // 去掉首行及末尾的 Caused by、省略行
+        for (int i = 0; i < stackDepth; i++)
+        {
+            line.setLength(0);
+            if (i == stackDepth - 1)
+                line.append(SampleLines.STACK_TRACE[SampleLines.STACK_TRACE.length - 1]);
+            else if (i == stackDepth - 2)
+                line.append(SampleLines.STACK_TRACE[SampleLines.STACK_TRACE.length - 2]);
+            else
+                line.append(SampleLines.STACK_TRACE[1 + random.nextInt(frames)]);
+            writeLine(writer, line);
+        }
+    }
+
+    /**
+     * IDEA日志的行首：日期 时间,毫秒 [线程号] 级别 -
+     */
+    private static void appendPrefix(StringBuilder line, String date, int millisOfDay, int thread)
+    {
+        line.append(date).append(' ');
+        appendPadded(line, millisOfDay / 3_600_000, 2);
+        line.append(':');
+        appendPadded(line, millisOfDay / 60_000 % 60, 2);
+        line.append(':');
+        appendPadded(line, millisOfDay / 1000 % 60, 2);
+        line.append(',');
+        appendPadded(line, millisOfDay % 1000, 3);
+        line.append(" [");
+        String threadId = Integer.toString(thread);
+        for (int i = threadId.length(); i < 7; i++)
+        {
+            line.append(' ');
+        }
+        line.append(threadId).append("]   ");
+    }
+
+    private static void appendPadded(StringBuilder line, int value, int width)
+    {
+        String digits = Integer.toString(value);
+        for (int i = digits.length(); i < width; i++)
+        {
+            line.append('0');
+        }
+        line.append(digits);
+    }
+
+    /**
+     * 追加随机字符补齐到目标行长，已超过时不截断
+     */
+    private static void pad(StringBuilder line, int length, Random random)
+    {
+        if (line.length() < length)
+            line.append(' ');
+        while (line.length() < length)
+        {
+            line.append(FILLER.charAt(random.nextInt(FILLER.length())));
+        }
+    }
+
+    private void writeLine(Writer writer, StringBuilder line) throws IOException
+    {
+        writer.append(line).append('\n');
+        totalLines++;
+        // 日志内容都是ASCII，按字符数计算字节数
+        totalBytes += line.length() + 1;
+    }
+}
@@ -0,0 +1,104 @@
+package com.idea;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @ClassName: ProcessLineBenchmark
+ * @Description: 单行处理的基准测试：{@link LogAnalyzer2#processLine}，以及其中的日期解析和窗口判断。<br>
+ *      分别测试普通日志、不命中任何关键字的日志、以异常堆栈为主的日志三种内容，结果为每毫秒处理的行数。
+ *      extraRules 为在内置规则之外追加的规则条数（一半关键字、一半带预筛选关键字的正则），用于确认规则增多不拖慢逐行统计：
+ *      0、10、46 分别为4个、14个、50个关键字，均由同一个自动机匹配。
+ * @Author: yuanbao
+ * @Date: 2025/4/1
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessLineBenchmark
+{
+    // 每次调用处理的行数
+    private static final int LINES = 4096;
+
+    @Param({"typical", "nonMatching", "exception"})
+    public String kind;
+
+    @Param({"0", "10", "46"})
+    public int extraRules;
+
+    private String[] lines;
+    private AnalysisWindow window;
+    private long[] userStats;
+    private EventRules.Counter counter;
+
+    @Setup
+    public void setup()
+    {
+        LocalDate baseDate = LocalDate.of(2025, 3, 10);
+        window = new AnalysisWindow(baseDate, LogAnalyzer2.AnalysisMode.DAILY);
+        // 日志跨越窗口前后，部分行不在窗口内
+        lines = SampleLines.generate(kind, LINES, baseDate.minusDays(9), 10);
+        userStats = new long[StatsCube.sliceLength(window.dayCount())];
+        counter = rules(extraRules).newCounter();
+    }
+
+    /**
+     * 内置规则加上 extra 条不会命中的规则
+     */
+    private static EventRules rules(int extra)
+    {
+        List<EventRules.Rule> rules = new ArrayList<>(LogAnalyzer2.DEFAULT_RULES.rules());
+        for (int i = 0; i < extra; i++)
+        {
+            if (i % 2 == 0)
+                rules.add(EventRules.Rule.literal("extra" + i, StatsCube.Metric.COPILOT_ACTION, "com.example.assistant" + i + ".CompletionService - accepted"));
+            else
+                rules.add(new EventRules.Rule("extra" + i, StatsCube.Metric.COPILOT_SELECT, null, Pattern.compile("ChatPanel" + i + " - request id=\\d+ tokens=\\d+"), 1, null));
+        }
+        return new EventRules(rules, Collections.singletonMap(StatsCube.Metric.COPILOT_SELECT, 3L));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long[] processLine()
+    {
+        for (String line : lines)
+        {
+            LogAnalyzer2.processLine(line, userStats, window, counter);
+        }
+        return userStats;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int parseDateAndCheckRange()
+    {
+        int within = 0;
+        for (String line : lines)
+        {
+            if (window.isWithinRange(LogDateParser.parseEpochDay(line)))
+                within++;
+        }
+        return within;
+    }
+}
@@ -0,0 +1,88 @@
+package com.idea;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * @ClassName: SampleLines
+ * @Description: 基准测试用的IDEA日志行，格式与采集到的 idea.log 一致。<br>
+ *      固定随机种子，每次运行生成的内容相同，结果可以互相比较。
+ * @Author: yuanbao
+ * @Date: 2025/4/1
+ **/
+final class SampleLines
+{
+    // 命中统计关键字的行
+    static final String[] MATCHING = {
+            "#c.a.i.c.e.CosyEditorActionHandler - execute action:EditorTab",
+            "#c.a.i.c.c.ChatService - Select model is qwen-plus",
+            "#c.g.c.l.CopilotAgent - POST https://proxy.individual.githubcopilot.com/v1/engines/copilot-codex/completions 200",
+            "#c.g.c.l.CopilotAgent - POST https://api.individual.githubcopilot.com/chat/completions 200",
+    };
+    // 普通的IDEA日志内容
+    static final String[] ORDINARY = {
+            "#c.i.o.v.n.p.PersistentFSImpl - VFS refresh finished in 12 ms",
+            "#c.i.u.i.FileBasedIndexImpl - Indexing finished for project LogAnalysis",
+            "#c.i.o.a.i.ActionUpdater - 31 ms to grab EDT for ProjectViewPopupMenu",
+            "#c.i.c.ComponentStoreImpl - Saving Project(name=LogAnalysis) workspace took 8 ms",
+            "#o.j.i.BuildManager - Build process started. Classpath: C:/Program Files/JetBrains/IntelliJ IDEA/plugins/java/lib/jps-launcher.jar",
+    };
+    // 异常堆栈，除第一行外都没有行首日期
+    static final String[] STACK_TRACE = {
+            "java.lang.IllegalStateException: Cannot find module for file LogAnalyzer2.java",
+            "\tat com.intellij.openapi.module.impl.ModuleManagerImpl.findModule(ModuleManagerImpl.java:412)",
+            "\tat com.intellij.psi.impl.source.PsiJavaFileImpl.getClasses(PsiJavaFileImpl.java:98)",
+            "\tat com.intellij.openapi.application.impl.ApplicationImpl.runReadAction(ApplicationImpl.java:1021)",
+            "\tat java.base/java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:1136)",
+            "Caused by: java.lang.NullPointerException",
+            "\t... 42 more",
+    };
+
+    private SampleLines()
+    {
+    }
+
+    /**
+     * 生成日志行
+     *
+     * @param kind typical：约四分之一命中关键字的普通日志；nonMatching：不命中任何关键字；exception：以异常堆栈为主
+     * @param count 行数
+     * @param firstDate 第一行的日期
+     * @param days 日志跨越的天数，日期按行顺序递增
+     */
+    static String[] generate(String kind, int count, LocalDate firstDate, int days)
+    {
+        Random random = new Random(20250401L);
+        String[] lines = new String[count];
+        int i = 0;
+        while (i < count)
+        {
+            String prefix = prefix(firstDate.plusDays((long) i * days / count), i);
+            switch (kind)
+            {
+                case "typical":
+                    lines[i++] = prefix + (random.nextInt(4) == 0 ? MATCHING[random.nextInt(MATCHING.length)] : ORDINARY[random.nextInt(ORDINARY.length)]);
+                    break;
+                case "nonMatching":
+                    lines[i++] = prefix + ORDINARY[random.nextInt(ORDINARY.length)];
+                    break;
+                case "exception":
+                    lines[i++] = prefix.replace("INFO", "ERROR") + "#c.i.o.a.i.ApplicationImpl - Cannot find module";
+                    for (int j = 0; j < STACK_TRACE.length && i < count; j++)
+                    {
+                        lines[i++] = STACK_TRACE[j];
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的日志行类型：" + kind);
+            }
+        }
+        return lines;
+    }
+
+    private static String prefix(LocalDate date, int i)
+    {
+        int second = i % 86400;
+        return String.format("%s %02d:%02d:%02d,%03d [%7d]   INFO - ", date, second / 3600, second / 60 % 60, second % 60, i % 1000, i);
+    }
+}
@@ -0,0 +1,110 @@
+package com.idea;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @ClassName: ScanFileBenchmark
+ * @Description: 整个日志文件的扫描：切分、逐行读取和统计，单线程执行，结果为每秒扫描的文件数。<br>
+ *      日志文件在临时目录中生成，测试结束后删除；文件较小，多次读取后基本来自系统缓存，测的是CPU开销而不是磁盘速度。
+ *      scan 为 bytes 时直接按字节扫描，为 lines 时按UTF-8解码后逐行处理（--byte-scan=false），对比两者的吞吐量和 gc.alloc.rate.norm。
+ *      readAhead 为预读的请求数（--read-ahead），为0时同步读取；本地缓存中的文件测的是预读本身的开销，网络共享上的收益需端到端测试。
+ * @Author: yuanbao
+ * @Date: 2025/4/1
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScanFileBenchmark
+{
+    @Param({"200000"})
+    public int lines;
+
+    @Param({"typical", "exception"})
+    public String kind;
+
+    @Param({"bytes", "lines"})
+    public String scan;
+
+    @Param({"0", "4"})
+    public int readAhead;
+
+    private Path file;
+    private AnalysisWindow window;
+    private AnalysisMetrics metrics;
+    private AnalysisOptions options;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        LocalDate baseDate = LocalDate.of(2025, 3, 10);
+        window = new AnalysisWindow(baseDate, LogAnalyzer2.AnalysisMode.DAILY);
+        metrics = new AnalysisMetrics();
+        options = new AnalysisOptions().setReadAhead(readAhead);
+        file = Files.createTempFile("bench_用户_", "_idea.log");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+        {
+            for (String line : SampleLines.generate(kind, lines, baseDate.minusDays(9), 10))
+            {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long[] scanFile() throws IOException
+    {
+        long[] days = new long[StatsCube.sliceLength(window.dayCount())];
+        Set<Path> failedFiles = new HashSet<>();
+        List<LogSegment> segments;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            segments = LogSegment.split(channel, file, "用户", 0, channel.size(), Long.MAX_VALUE);
+        }
+        for (LogSegment segment : segments)
+        {
+            EventRules.Counter counter = LogAnalyzer2.DEFAULT_RULES.newCounter();
+            long[] segmentDays = scan.equals("bytes") ? LogAnalyzer2.scanSegment(segment, window, counter, options, failedFiles, metrics)
+                    : LogAnalyzer2.scanSegmentLines(segment, window, counter, options, failedFiles, metrics);
+            for (int i = 0; i < days.length; i++)
+            {
+                days[i] += segmentDays[i];
+            }
+        }
+        return days;
+    }
+}
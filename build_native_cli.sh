@@ -0,0 +1,81 @@
+#!/bin/sh
+# 构建不含界面的Linux本地命令行程序 release/loganalysis，供定时任务批量调用，启动只需几毫秒。
+# 用法：./build_native_cli.sh [样本日志目录] [日期]
+#   样本日志目录：代表日常分析内容的日志，用于采集POI等库所需的反射配置和基于剖析的优化（PGO）；
+#                 未指定时用 benchmarks 的 LogCorpusGenerator 生成20个用户、30天的模拟日志
+#   日期：分析样本时的日期参数，默认20250331（模拟日志的最后一天）
+# 需要：JAVA_HOME 指向GraalVM（含 native-image），Maven；PGO需要Oracle GraalVM，社区版可设置 NATIVE_PGO=false 跳过
+set -e
+cd "$(dirname "$0")"
+
+SAMPLE_DIR=${1:-target/native-cli-sample}
+SAMPLE_DATE=${2:-20250331}
+CONFIG_DIR=target/native-cli-config
+RUN_DIR=target/native-cli-run
+JAR=target/LogAnalysis-1.2-SNAPSHOT.jar
+export PATH="$JAVA_HOME/bin:$PATH"
+
+echo "正在构建JAR文件..."
+if [ -z "$1" ]; then
+    # 同时构建基准测试工程，用其中的 LogCorpusGenerator 生成模拟日志
+    mvn -q -f pom-all.xml clean package -Dfile.encoding=UTF-8
+else
+    mvn -q clean package -Dfile.encoding=UTF-8
+fi
+
+if [ -z "$1" ]; then
+    echo "正在生成模拟日志：$SAMPLE_DIR"
+    java -cp benchmarks/target/benchmarks.jar com.idea.LogCorpusGenerator "$SAMPLE_DIR" --users=20 --days=30 --size=256 --rotations=2
+fi
+
+# 样本分析：覆盖日报告、多视图、时段统计、多日期、增量、按天汇总、解码扫描等主要路径，每行为一次运行的可选参数
+workload() {
+    run=0
+    while read -r opts; do
+        run=$((run + 1))
+        rm -rf "$RUN_DIR/$run" && mkdir -p "$RUN_DIR/$run"
+        "$@" "$run" $SAMPLE_DATE "$SAMPLE_DIR" "$RUN_DIR/$run" $opts > /dev/null
+    done <<EOF
+--parallelism=1
+--views=daily,weekly,monthly --histogram=hour
+--dates=$SAMPLE_DATE,${SAMPLE_DATE%??} --histogram=15min
+--checkpoint --rollup --views=daily,monthly
+--byte-scan=false --seek=false --excel=false
+EOF
+    # 最后一次由按天汇总生成报告，不读取日志
+    run=$((run + 1))
+    rm -rf "$RUN_DIR/$run" && cp -r "$RUN_DIR/4" "$RUN_DIR/$run"
+    "$@" "$run" $SAMPLE_DATE "$SAMPLE_DIR" "$RUN_DIR/$run" --from-rollup --views=daily,monthly > /dev/null
+}
+
+echo "正在采集反射和资源配置..."
+rm -rf "$CONFIG_DIR"
+jvm_run() {
+    shift
+    java -agentlib:native-image-agent=config-merge-dir="$CONFIG_DIR" -cp "$JAR" com.idea.LogAnalyzer2 "$@"
+}
+workload jvm_run
+
+mkdir -p release
+if [ "$NATIVE_PGO" = "false" ]; then
+    echo "正在生成本地可执行文件（不做PGO）..."
+    mvn -q -Pnative-cli package -DskipTests -Dfile.encoding=UTF-8
+else
+    echo "正在生成插桩版本并运行样本分析，采集剖析数据..."
+    mvn -q -Pnative-cli package -DskipTests -Dfile.encoding=UTF-8 -Dnative.pgo.arg=--pgo-instrument
+    cp target/loganalysis "$RUN_DIR/loganalysis-instrumented"
+    native_run() {
+        run=$1
+        shift
+        "$RUN_DIR/loganalysis-instrumented" -XX:ProfilesDumpFile="$RUN_DIR/$run.iprof" "$@"
+    }
+    workload native_run
+    PROFILES=$(ls "$RUN_DIR"/*.iprof | tr '\n' ',' | sed 's/,$//')
+
+    echo "正在按剖析数据生成本地可执行文件..."
+    mvn -q -Pnative-cli package -DskipTests -Dfile.encoding=UTF-8 "-Dnative.pgo.arg=--pgo=$PROFILES"
+fi
+
+cp target/loganalysis release/
+echo "构建完成：release/loganalysis"
+echo "用法同jar包：release/loganalysis 20250304 日志目录 [结果目录] [--名称=值 ...]；识别规则文件放在可执行文件所在目录"
@@ -0,0 +1,380 @@
+package com.idea;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @ClassName: AnalysisMetrics
+ * @Description: 一次分析的运行指标，分析期间注册为JMX MBean，结束后写入输出目录下的 analysis_metrics.txt。<br>
+ *      同时承载取消请求：界面或JMX调用 {@link #cancel()} 后，扫描线程定期检查并尽快停止；
+ *      正在等待的分析线程由 {@link #onCancel} 登记的操作唤醒（结束目录遍历、停止线程池），不必等到下一次检查。
+ *      计数器为 {@link LongAdder}，各线程写入不同的分片，互不争用；扫描线程先在本地累计，每隔若干行或一段结束时再加到这里，
+ *      因此一直开启也基本不影响分析速度。
+ * @Author: yuanbao
+ * @Date: 2025/4/3
+ **/
+public class AnalysisMetrics implements AnalysisMetricsMBean
+{
+    // 指标文件名
+    static final String FILE_NAME = "analysis_metrics.txt";
+    // 注册到JMX的名称
+    private static final String OBJECT_NAME = "com.idea:type=LogAnalysis";
+
+    /**
+     * 分析的阶段
+     */
+    enum Phase
+    {
+        IDLE,      // 空闲
+        SCAN,      // 定位、切分并扫描日志
+        AGGREGATE, // 汇总各段结果、保存断点
+        REPORT     // 生成报告
+    }
+
+    private final LongAdder filesDone = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder extraBytesRead = new LongAdder(); // 扫描之外的读取（去重比较、建立日期索引），同时计入总量
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder linesWithoutDate = new LongAdder();
+    private final LongAdder[] metricCounts = new LongAdder[StatsCube.METRIC_COUNT]; // 下标为 StatsCube.Metric 的序号
+    private volatile long filesTotal;
+    private volatile long bytesTotal = -1; // 定位、切分完成前为-1
+    private volatile String currentFile = "";
+    private volatile boolean cancelled;
+    private final List<Runnable> cancelHooks = new CopyOnWriteArrayList<>(); // 取消时执行，唤醒等待中的分析线程
+
+    private volatile Phase phase = Phase.IDLE;
+    private volatile long phaseStart; // 当前阶段开始的时刻（System.nanoTime）
+    private final long[] phaseNanos = new long[Phase.values().length]; // 已结束阶段的耗时
+
+    public AnalysisMetrics()
+    {
+        for (int i = 0; i < metricCounts.length; i++)
+        {
+            metricCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 注册为JMX MBean，替换上一次分析注册的实例
+     */
+    void register()
+    {
+        // 本地可执行文件用于定时批量运行，不开启JMX，注册只会拖慢启动
+        if (LogAnalyzer2.isNativeImage())
+            return;
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (JMException | SecurityException e)
+        {
+            // 指标只用于观察，注册失败不影响分析
+            System.err.println("注册JMX指标出错：" + e.toString());
+        }
+    }
+
+    /**
+     * 进入下一个阶段，上一阶段的耗时计入该阶段
+     */
+    synchronized void startPhase(Phase next)
+    {
+        long now = System.nanoTime();
+        if (phase != Phase.IDLE)
+            phaseNanos[phase.ordinal()] += now - phaseStart;
+        phaseStart = now;
+        phase = next;
+    }
+
+    void setFilesTotal(long filesTotal)
+    {
+        this.filesTotal = filesTotal;
+    }
+
+    void fileDone()
+    {
+        filesDone.increment();
+    }
+
+    void setBytesTotal(long bytesTotal)
+    {
+        this.bytesTotal = bytesTotal;
+    }
+
+    void setCurrentFile(String currentFile)
+    {
+        this.currentFile = currentFile;
+    }
+
+    void addBytesRead(long bytes)
+    {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * 扫描之外读取日志的字节数：事先不知道总量，读到多少同时计入总量和已读，进度不会超过实际
+     */
+    void addExtraBytesRead(long bytes)
+    {
+        extraBytesRead.add(bytes);
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * 扫描线程定期汇报本地累计的行数
+     */
+    void addLines(long lines, long withoutDate)
+    {
+        linesRead.add(lines);
+        linesWithoutDate.add(withoutDate);
+    }
+
+    /**
+     * 一段扫描结束后，加上该段 天 × 指标 计数数组中各指标的合计
+     */
+    void addSegmentCounts(long[] segmentDays)
+    {
+        for (int m = 0; m < StatsCube.METRIC_COUNT; m++)
+        {
+            long sum = 0;
+            for (int i = m; i < segmentDays.length; i += StatsCube.METRIC_COUNT)
+            {
+                sum += segmentDays[i];
+            }
+            metricCounts[m].add(sum);
+        }
+    }
+
+    /**
+     * 写入输出目录下的指标文件，每行一个 名称=值
+     */
+    void writeTo(String outputDir) throws IOException
+    {
+        Path path = Paths.get(outputDir, FILE_NAME);
+        try (BufferedWriter writer = Files.newBufferedWriter(path))
+        {
+            writer.write("filesTotal=" + getFilesTotal() + "\n");
+            writer.write("filesDone=" + getFilesDone() + "\n");
+            writer.write("bytesTotal=" + getBytesTotal() + "\n");
+            writer.write("bytesRead=" + getBytesRead() + "\n");
+            writer.write("linesRead=" + getLinesRead() + "\n");
+            writer.write(String.format("bytesPerSecond=%.0f%n", getBytesPerSecond()));
+            writer.write(String.format("linesPerSecond=%.0f%n", getLinesPerSecond()));
+            writer.write("linesWithoutDate=" + getLinesWithoutDate() + "\n");
+            writer.write("linesInWindow=" + getLinesInWindow() + "\n");
+            writer.write("cosyActionMatches=" + getCosyActionMatches() + "\n");
+            writer.write("cosySelectMatches=" + getCosySelectMatches() + "\n");
+            writer.write("copilotActionMatches=" + getCopilotActionMatches() + "\n");
+            writer.write("copilotSelectMatches=" + getCopilotSelectMatches() + "\n");
+            writer.write("scanMillis=" + getScanMillis() + "\n");
+            writer.write("aggregateMillis=" + getAggregateMillis() + "\n");
+            writer.write("reportMillis=" + getReportMillis() + "\n");
+        }
+    }
+
+    /**
+     * 某阶段的耗时（纳秒），正在进行中的阶段算到当前时刻
+     */
+    private synchronized long phaseNanos(Phase target)
+    {
+        long nanos = phaseNanos[target.ordinal()];
+        if (phase == target)
+            nanos += System.nanoTime() - phaseStart;
+        return nanos;
+    }
+
+    private long phaseMillis(Phase target)
+    {
+        return phaseNanos(target) / 1_000_000;
+    }
+
+    /**
+     * 扫描阶段的平均速率，扫描结束后不再变化
+     */
+    private double perSecond(long count)
+    {
+        long nanos = phaseNanos(Phase.SCAN);
+        return nanos > 0 ? count * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public String getPhase()
+    {
+        return phase.name();
+    }
+
+    @Override
+    public long getFilesTotal()
+    {
+        return filesTotal;
+    }
+
+    @Override
+    public long getFilesDone()
+    {
+        return filesDone.sum();
+    }
+
+    @Override
+    public long getFilesRemaining()
+    {
+        return Math.max(0, filesTotal - filesDone.sum());
+    }
+
+    @Override
+    public String getCurrentFile()
+    {
+        return currentFile;
+    }
+
+    @Override
+    public long getBytesTotal()
+    {
+        return Math.max(0, bytesTotal) + extraBytesRead.sum();
+    }
+
+    @Override
+    public long getBytesRead()
+    {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getLinesRead()
+    {
+        return linesRead.sum();
+    }
+
+    @Override
+    public double getBytesPerSecond()
+    {
+        return perSecond(bytesRead.sum());
+    }
+
+    @Override
+    public double getLinesPerSecond()
+    {
+        return perSecond(linesRead.sum());
+    }
+
+    @Override
+    public double getProgressPercent()
+    {
+        long total = bytesTotal;
+        if (total <= 0)
+            return total < 0 ? 0 : 100;
+        return Math.min(100, bytesRead.sum() * 100.0 / (total + extraBytesRead.sum()));
+    }
+
+    @Override
+    public long getEtaSeconds()
+    {
+        double rate = getBytesPerSecond();
+        long total = bytesTotal;
+        if (total <= 0 || rate <= 0)
+            return -1;
+        return (long) Math.ceil(Math.max(0, total + extraBytesRead.sum() - bytesRead.sum()) / rate);
+    }
+
+    @Override
+    public long getLinesWithoutDate()
+    {
+        return linesWithoutDate.sum();
+    }
+
+    @Override
+    public long getLinesInWindow()
+    {
+        return metricCounts[StatsCube.Metric.TOTAL.ordinal()].sum();
+    }
+
+    @Override
+    public long getCosyActionMatches()
+    {
+        return metricCounts[StatsCube.Metric.COSY_ACTION.ordinal()].sum();
+    }
+
+    @Override
+    public long getCosySelectMatches()
+    {
+        return metricCounts[StatsCube.Metric.COSY_SELECT.ordinal()].sum();
+    }
+
+    @Override
+    public long getCopilotActionMatches()
+    {
+        return metricCounts[StatsCube.Metric.COPILOT_ACTION.ordinal()].sum();
+    }
+
+    @Override
+    public long getCopilotSelectMatches()
+    {
+        return metricCounts[StatsCube.Metric.COPILOT_SELECT.ordinal()].sum();
+    }
+
+    @Override
+    public long getScanMillis()
+    {
+        return phaseMillis(Phase.SCAN);
+    }
+
+    @Override
+    public long getAggregateMillis()
+    {
+        return phaseMillis(Phase.AGGREGATE);
+    }
+
+    @Override
+    public long getReportMillis()
+    {
+        return phaseMillis(Phase.REPORT);
+    }
+
+    @Override
+    public void cancel()
+    {
+        cancelled = true;
+        for (Runnable hook : cancelHooks)
+        {
+            hook.run();
+        }
+    }
+
+    /**
+     * 登记取消时执行的操作，已取消时立即执行；操作可能在调用 cancel() 的线程（如界面线程）中执行，也可能执行多次
+     */
+    void onCancel(Runnable hook)
+    {
+        cancelHooks.add(hook);
+        if (cancelled)
+            hook.run();
+    }
+
+    /**
+     * 分析结束后移除登记的操作
+     */
+    void removeCancelHook(Runnable hook)
+    {
+        cancelHooks.remove(hook);
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+}
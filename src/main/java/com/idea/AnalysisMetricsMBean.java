@@ -0,0 +1,66 @@
+package com.idea;
+
+/**
+ * @ClassName: AnalysisMetricsMBean
+ * @Description: 分析过程的运行指标，通过JMX查看（如 jconsole 连接后在 com.idea:type=LogAnalysis 下）。<br>
+ *      速率为扫描阶段的平均值；各阶段耗时包括正在进行中的阶段。
+ * @Author: yuanbao
+ * @Date: 2025/4/3
+ **/
+public interface AnalysisMetricsMBean
+{
+    /** 当前阶段：空闲、扫描、汇总、生成报告 */
+    String getPhase();
+
+    long getFilesTotal();
+
+    long getFilesDone();
+
+    long getFilesRemaining();
+
+    /** 正在扫描的文件，多线程时为最近开始扫描的一个 */
+    String getCurrentFile();
+
+    /** 需要读取的总字节数，定位、切分完成后才确定 */
+    long getBytesTotal();
+
+    /** 读取的字节数，.gz 按压缩后的大小计算，zip包按解压后的大小计算 */
+    long getBytesRead();
+
+    long getLinesRead();
+
+    double getBytesPerSecond();
+
+    double getLinesPerSecond();
+
+    /** 按字节计算的扫描进度，0到100 */
+    double getProgressPercent();
+
+    /** 按当前速率估算的扫描剩余秒数，尚无法估算时为-1 */
+    long getEtaSeconds();
+
+    /** 行首没有日期（续行、异常堆栈等）的行数 */
+    long getLinesWithoutDate();
+
+    /** 统计窗口内的行数 */
+    long getLinesInWindow();
+
+    long getCosyActionMatches();
+
+    long getCosySelectMatches();
+
+    long getCopilotActionMatches();
+
+    long getCopilotSelectMatches();
+
+    long getScanMillis();
+
+    long getAggregateMillis();
+
+    long getReportMillis();
+
+    /** 请求取消分析，扫描线程会在处理完当前几千行后停止 */
+    void cancel();
+
+    boolean isCancelled();
+}
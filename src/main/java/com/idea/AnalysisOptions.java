@@ -0,0 +1,482 @@
+package com.idea;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @ClassName: AnalysisOptions
+ * @Description: 日志分析的可选参数。命令行中以 --名称=值 的形式传入，与日期、日志目录、输出目录三个位置参数互不影响。<br>
+ *      支持的参数：
+ *      --parallelism=N  并行分析的线程数，默认为CPU核数；为1时即串行分析
+ *      --chunk-size=M   超过M兆字节的日志文件按行切分为多段并行扫描，默认64
+ *      --seek=true      按行首日期二分定位统计窗口，只读取窗口内的内容，默认开启；日志日期不是顺序递增时应关闭
+ *      --dedup=true     去除重复采集的日志文件：同一用户内容相同或为另一文件开头部分的文件只读取一次，默认开启
+ *      --byte-scan=true 直接在字节上切分行和匹配关键字，不逐行解码为字符串，默认开启；为false时按UTF-8解码后逐行处理
+ *      --read-ahead=N   每个分段预先发出的异步读请求数，读取与扫描重叠，默认4；为0时不预读，扫描线程同步读取
+ *      --read-block=K   预读时每个读请求的大小（KB），默认1024
+ *      --day-index      为轮转日志建立日期索引，保存在输出目录的 analysis_index.txt 中，之后按索引定位，默认关闭；需开启 --seek
+ *      --checkpoint     增量分析，在输出目录记录每个文件已分析的位置和计数，下次只读取新追加的内容，默认关闭
+ *      --watch          持续监视日志目录，跟踪新写入的日志并定期更新报告，默认关闭
+ *      --flush-interval=S 持续监视时，有新日志后最迟S秒更新一次报告，默认5
+ *      --views=daily,weekly,monthly 一次扫描同时生成的报告，默认按日期参数的格式只生成日或月报告；周报告按ISO周统计
+ *      --dates=20250304,20250311 除日期参数外再生成这些日期的报告，与日期参数共用一次扫描；格式同日期参数，同一模式有多个日期时报告文件名带上日期
+ *      --histogram=hour 统计各用户在一天中各时段使用AI插件的次数，写入Excel报告的“时段分布”表；hour为按小时，15min为按15分钟，默认不统计
+ *      --rollup         分析后把按天的统计结果写入输出目录的 analysis_rollup 目录（每月一个文件），默认关闭
+ *      --from-rollup    不读取日志，直接由 analysis_rollup 中的按天汇总生成报告；窗口内有未分析过的天时报错
+ *      --excel=true     除txt报告外生成Excel报告，默认开启；为false时只生成txt，不加载POI，适合定时批量运行
+ *      --rules=文件      AI插件行为的识别规则文件，格式见 {@link EventRules}；未指定时使用jar包目录下的 analysis_rules.properties，没有则用内置规则
+ * @Author: yuanbao
+ * @Date: 2025/3/20
+ **/
+public class AnalysisOptions
+{
+    // 并行度，即同时分析日志文件的线程数
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    // 大文件切分的分段大小（字节）
+    private long chunkSize = 64L * 1024 * 1024;
+    // 是否按日期定位统计窗口对应的字节区间
+    private boolean seek = true;
+    // 是否去除重复采集的日志文件
+    private boolean dedup = true;
+    // 是否不解码、直接按字节扫描
+    private boolean byteScan = true;
+    // 预读的请求数，为0时不预读
+    private int readAhead = 4;
+    // 预读每个请求的字节数
+    private int readBlockSize = 1024 * 1024;
+    // 是否为轮转日志建立和使用日期索引
+    private boolean dayIndex = false;
+    // 是否增量分析
+    private boolean checkpoint = false;
+    // 是否持续监视日志目录
+    private boolean watch = false;
+    // 持续监视时更新报告的间隔（秒）
+    private int flushInterval = 5;
+    // 同时生成的报告的统计模式，为空时按日期参数确定
+    private List<LogAnalyzer2.AnalysisMode> views = new ArrayList<>();
+    // 除日期参数外需要生成报告的日期，格式同日期参数
+    private List<String> dates = new ArrayList<>();
+    // 时段统计每个时段的分钟数，为0时不统计
+    private int histogramMinutes = 0;
+    // 是否写入按天汇总
+    private boolean rollup = false;
+    // 是否直接由按天汇总生成报告
+    private boolean fromRollup = false;
+    // 是否生成Excel报告
+    private boolean excel = true;
+    // 识别规则，为null时使用内置规则
+    private EventRules rules;
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    public AnalysisOptions setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            System.err.println("并行度必须大于等于1。当前为：" + parallelism);
+            throw new RuntimeException("并行度必须大于等于1。当前为：" + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public long getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    public AnalysisOptions setChunkSize(long chunkSize)
+    {
+        if (chunkSize < 1)
+        {
+            System.err.println("分段大小必须大于0。当前为：" + chunkSize);
+            throw new RuntimeException("分段大小必须大于0。当前为：" + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public boolean isSeek()
+    {
+        return seek;
+    }
+
+    public AnalysisOptions setSeek(boolean seek)
+    {
+        this.seek = seek;
+        return this;
+    }
+
+    public boolean isDedup()
+    {
+        return dedup;
+    }
+
+    public AnalysisOptions setDedup(boolean dedup)
+    {
+        this.dedup = dedup;
+        return this;
+    }
+
+    public boolean isByteScan()
+    {
+        return byteScan;
+    }
+
+    public AnalysisOptions setByteScan(boolean byteScan)
+    {
+        this.byteScan = byteScan;
+        return this;
+    }
+
+    public int getReadAhead()
+    {
+        return readAhead;
+    }
+
+    public AnalysisOptions setReadAhead(int readAhead)
+    {
+        if (readAhead < 0)
+        {
+            System.err.println("预读请求数不能小于0。当前为：" + readAhead);
+            throw new RuntimeException("预读请求数不能小于0。当前为：" + readAhead);
+        }
+        this.readAhead = readAhead;
+        return this;
+    }
+
+    public int getReadBlockSize()
+    {
+        return readBlockSize;
+    }
+
+    public AnalysisOptions setReadBlockSize(int readBlockSize)
+    {
+        if (readBlockSize < 1)
+        {
+            System.err.println("预读块大小必须大于0。当前为：" + readBlockSize);
+            throw new RuntimeException("预读块大小必须大于0。当前为：" + readBlockSize);
+        }
+        this.readBlockSize = readBlockSize;
+        return this;
+    }
+
+    public boolean isExcel()
+    {
+        return excel;
+    }
+
+    public AnalysisOptions setExcel(boolean excel)
+    {
+        this.excel = excel;
+        return this;
+    }
+
+    public boolean isDayIndex()
+    {
+        return dayIndex;
+    }
+
+    public AnalysisOptions setDayIndex(boolean dayIndex)
+    {
+        this.dayIndex = dayIndex;
+        return this;
+    }
+
+    public boolean isCheckpoint()
+    {
+        return checkpoint;
+    }
+
+    public AnalysisOptions setCheckpoint(boolean checkpoint)
+    {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    public boolean isWatch()
+    {
+        return watch;
+    }
+
+    public AnalysisOptions setWatch(boolean watch)
+    {
+        this.watch = watch;
+        return this;
+    }
+
+    public int getFlushInterval()
+    {
+        return flushInterval;
+    }
+
+    public AnalysisOptions setFlushInterval(int flushInterval)
+    {
+        if (flushInterval < 1)
+        {
+            System.err.println("更新报告的间隔必须大于等于1秒。当前为：" + flushInterval);
+            throw new RuntimeException("更新报告的间隔必须大于等于1秒。当前为：" + flushInterval);
+        }
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * 需要生成的报告的统计模式，未通过 --views 指定时只有日期参数确定的模式
+     *
+     * @param defaultMode 日期参数确定的统计模式
+     */
+    List<LogAnalyzer2.AnalysisMode> getViews(LogAnalyzer2.AnalysisMode defaultMode)
+    {
+        return views.isEmpty() ? Collections.singletonList(defaultMode) : views;
+    }
+
+    public AnalysisOptions setViews(List<LogAnalyzer2.AnalysisMode> views)
+    {
+        this.views = new ArrayList<>(views);
+        return this;
+    }
+
+    public List<String> getDates()
+    {
+        return dates;
+    }
+
+    public AnalysisOptions setDates(List<String> dates)
+    {
+        this.dates = new ArrayList<>(dates);
+        return this;
+    }
+
+    public int getHistogramMinutes()
+    {
+        return histogramMinutes;
+    }
+
+    /**
+     * @param histogramMinutes 时段的分钟数，只支持60、15，为0时不统计
+     */
+    public AnalysisOptions setHistogramMinutes(int histogramMinutes)
+    {
+        if (histogramMinutes != 0 && histogramMinutes != 60 && histogramMinutes != 15)
+        {
+            System.err.println("时段只支持60分钟或15分钟。当前为：" + histogramMinutes);
+            throw new RuntimeException("时段只支持60分钟或15分钟。当前为：" + histogramMinutes);
+        }
+        this.histogramMinutes = histogramMinutes;
+        return this;
+    }
+
+    public boolean isRollup()
+    {
+        return rollup;
+    }
+
+    public AnalysisOptions setRollup(boolean rollup)
+    {
+        this.rollup = rollup;
+        return this;
+    }
+
+    public boolean isFromRollup()
+    {
+        return fromRollup;
+    }
+
+    public AnalysisOptions setFromRollup(boolean fromRollup)
+    {
+        this.fromRollup = fromRollup;
+        return this;
+    }
+
+    public AnalysisOptions setRulesFile(String rulesFile)
+    {
+        this.rules = EventRules.load(Paths.get(rulesFile));
+        return this;
+    }
+
+    EventRules getRules()
+    {
+        return rules != null ? rules : LogAnalyzer2.DEFAULT_RULES;
+    }
+
+    /**
+     * 未通过 --rules 指定规则文件时，使用目录下的 analysis_rules.properties（如有）
+     *
+     * @param dir jar包所在目录
+     */
+    void useRulesFileIn(String dir)
+    {
+        Path file = Paths.get(dir, EventRules.FILE_NAME);
+        if (rules == null && Files.isRegularFile(file))
+            rules = EventRules.load(file);
+    }
+
+    /**
+     * 判断命令行参数是否为可选参数（以--开头）
+     */
+    static boolean isOption(String arg)
+    {
+        return arg != null && arg.startsWith("--");
+    }
+
+    /**
+     * 解析单个可选参数，格式为 --名称=值
+     *
+     * @param arg 命令行参数
+     */
+    void applyArg(String arg)
+    {
+        int eq = arg.indexOf('=');
+        String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+        String value = eq < 0 ? "" : arg.substring(eq + 1);
+        switch (name)
+        {
+            case "parallelism":
+                setParallelism(parseInt(name, value));
+                break;
+            case "chunk-size":
+                setChunkSize(parseInt(name, value) * 1024L * 1024);
+                break;
+            case "seek":
+                setSeek(parseBoolean(name, value));
+                break;
+            case "dedup":
+                setDedup(parseBoolean(name, value));
+                break;
+            case "byte-scan":
+                setByteScan(parseBoolean(name, value));
+                break;
+            case "excel":
+                setExcel(parseBoolean(name, value));
+                break;
+            case "read-ahead":
+                setReadAhead(parseInt(name, value));
+                break;
+            case "read-block":
+                setReadBlockSize(parseInt(name, value) * 1024);
+                break;
+            case "day-index":
+                setDayIndex(parseBoolean(name, value));
+                break;
+            case "checkpoint":
+                setCheckpoint(parseBoolean(name, value));
+                break;
+            case "watch":
+                setWatch(parseBoolean(name, value));
+                break;
+            case "flush-interval":
+                setFlushInterval(parseInt(name, value));
+                break;
+            case "views":
+                setViews(parseViews(name, value));
+                break;
+            case "dates":
+                setDates(parseDates(name, value));
+                break;
+            case "histogram":
+                setHistogramMinutes(parseHistogram(name, value));
+                break;
+            case "rollup":
+                setRollup(parseBoolean(name, value));
+                break;
+            case "from-rollup":
+                setFromRollup(parseBoolean(name, value));
+                break;
+            case "rules":
+                setRulesFile(value.trim());
+                break;
+            default:
+                System.err.println("未知的参数：" + arg);
+                throw new RuntimeException("未知的参数：" + arg);
+        }
+    }
+
+    /**
+     * 解析布尔参数，只写参数名（如 --seek）时视为true
+     */
+    private static boolean parseBoolean(String name, String value)
+    {
+        String v = value.trim();
+        if (v.isEmpty() || v.equalsIgnoreCase("true"))
+            return true;
+        if (v.equalsIgnoreCase("false"))
+            return false;
+        System.err.println("参数" + name + "应为true或false。当前为：" + value);
+        throw new RuntimeException("参数" + name + "应为true或false。当前为：" + value);
+    }
+
+    /**
+     * 解析以逗号分隔的统计模式，如 daily,weekly,monthly，重复的只保留一个
+     */
+    private static List<LogAnalyzer2.AnalysisMode> parseViews(String name, String value)
+    {
+        List<LogAnalyzer2.AnalysisMode> views = new ArrayList<>();
+        for (String view : value.split(","))
+        {
+            try
+            {
+                LogAnalyzer2.AnalysisMode mode = LogAnalyzer2.AnalysisMode.valueOf(view.trim().toUpperCase());
+                if (!views.contains(mode))
+                    views.add(mode);
+            } catch (IllegalArgumentException e)
+            {
+                System.err.println("参数" + name + "应为daily、weekly、monthly，以逗号分隔。当前为：" + value);
+                throw new RuntimeException("参数" + name + "应为daily、weekly、monthly，以逗号分隔。当前为：" + value);
+            }
+        }
+        return views;
+    }
+
+    /**
+     * 解析以逗号分隔的日期，每个为 yyyyMMdd 或 yyyyMM
+     */
+    private static List<String> parseDates(String name, String value)
+    {
+        List<String> dates = new ArrayList<>();
+        for (String date : value.split(","))
+        {
+            String d = date.trim();
+            if (!d.matches("\\d{6}|\\d{8}"))
+            {
+                System.err.println("参数" + name + "应为yyyyMMdd或yyyyMM，以逗号分隔。当前为：" + value);
+                throw new RuntimeException("参数" + name + "应为yyyyMMdd或yyyyMM，以逗号分隔。当前为：" + value);
+            }
+            dates.add(d);
+        }
+        return dates;
+    }
+
+    /**
+     * 解析时段统计参数：hour 或 15min，只写参数名时视为 hour
+     */
+    private static int parseHistogram(String name, String value)
+    {
+        String v = value.trim();
+        if (v.isEmpty() || v.equalsIgnoreCase("hour"))
+            return 60;
+        if (v.equalsIgnoreCase("15min"))
+            return 15;
+        System.err.println("参数" + name + "应为hour或15min。当前为：" + value);
+        throw new RuntimeException("参数" + name + "应为hour或15min。当前为：" + value);
+    }
+
+    private static int parseInt(String name, String value)
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e)
+        {
+            System.err.println("参数" + name + "应为整数。当前为：" + value);
+            throw new RuntimeException("参数" + name + "应为整数。当前为：" + value);
+        }
+    }
+}
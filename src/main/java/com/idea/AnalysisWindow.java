@@ -0,0 +1,191 @@
+package com.idea;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @ClassName: AnalysisWindow
+ * @Description: 一次分析的统计窗口：由分析日期和统计模式确定的日期范围，以及范围内每天归属的统计单元（日、ISO周或月）。<br>
+ *      全部在构造时预先算好，逐行统计时只需做整数比较和数组下标运算，不再创建 LocalDate 对象。
+ *      同时生成多种报告时，扫描使用覆盖各窗口的范围（{@link #covering}），按天计数后再分别归入各窗口的统计单元。
+ * @Author: yuanbao
+ * @Date: 2025/3/25
+ **/
+final class AnalysisWindow
+{
+    private final LocalDate baseDate; // 分析日期
+    private final LogAnalyzer2.AnalysisMode mode; // 统计模式
+    private final int firstDay; // 统计范围第一天的纪元日（包含）
+    private final int lastDay; // 统计范围最后一天的纪元日（包含）
+    private final List<LocalDate> bucketDates; // 各统计单元的日期，日模式为当天，月模式为当月1号
+    private final int[] dayToBucket; // 下标为 纪元日 - firstDay，值为统计单元序号
+
+    AnalysisWindow(LocalDate baseDate, LogAnalyzer2.AnalysisMode mode)
+    {
+        this.baseDate = baseDate;
+        this.mode = mode;
+        if (mode == LogAnalyzer2.AnalysisMode.DAILY)
+        {
+            // 日模式：baseDate所在日期（包含）前7天
+            this.firstDay = (int) baseDate.minusDays(6).toEpochDay();
+            this.lastDay = (int) baseDate.toEpochDay();
+        } else if (mode == LogAnalyzer2.AnalysisMode.WEEKLY)
+        {
+            // 周模式：6周前的周一到baseDate所在周的周日
+            this.firstDay = (int) baseDate.with(DayOfWeek.MONDAY).minusWeeks(6).toEpochDay();
+            this.lastDay = (int) baseDate.with(DayOfWeek.SUNDAY).toEpochDay();
+        } else
+        {
+            // 月模式：6个月前的第一天（不包含）到当月的最后一天
+            this.firstDay = (int) baseDate.minusMonths(6).withDayOfMonth(1).toEpochDay() + 1;
+            this.lastDay = (int) baseDate.withDayOfMonth(baseDate.lengthOfMonth()).toEpochDay();
+        }
+
+        List<LocalDate> dates = new ArrayList<>();
+        if (mode == LogAnalyzer2.AnalysisMode.DAILY)
+        {
+            for (int i = 0; i < 7; i++)
+            {
+                dates.add(baseDate.minusDays(6 - i));
+            }
+        } else if (mode == LogAnalyzer2.AnalysisMode.WEEKLY)
+        {
+            for (int i = 6; i >= 0; i--)
+            {
+                dates.add(baseDate.with(DayOfWeek.MONDAY).minusWeeks(i));
+            }
+        } else
+        {
+            for (int i = 6; i >= 0; i--)
+            {
+                dates.add(YearMonth.from(baseDate).minusMonths(i).atDay(1));
+            }
+        }
+        this.bucketDates = Collections.unmodifiableList(dates);
+
+        this.dayToBucket = new int[lastDay - firstDay + 1];
+        for (int day = firstDay; day <= lastDay; day++)
+        {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            if (mode == LogAnalyzer2.AnalysisMode.DAILY)
+                dayToBucket[day - firstDay] = day - firstDay;
+            else if (mode == LogAnalyzer2.AnalysisMode.WEEKLY)
+                dayToBucket[day - firstDay] = (day - firstDay) / 7;
+            else
+                dayToBucket[day - firstDay] = dates.indexOf(date.withDayOfMonth(1));
+        }
+    }
+
+    /**
+     * 按天的窗口：覆盖 [firstDay, lastDay]，每天一个统计单元，没有统计模式，用于扫描和按天汇总，不用于生成报告
+     */
+    private AnalysisWindow(int firstDay, int lastDay)
+    {
+        this.baseDate = LocalDate.ofEpochDay(lastDay);
+        this.mode = null;
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+        List<LocalDate> dates = new ArrayList<>();
+        this.dayToBucket = new int[lastDay - firstDay + 1];
+        for (int day = firstDay; day <= lastDay; day++)
+        {
+            dates.add(LocalDate.ofEpochDay(day));
+            dayToBucket[day - firstDay] = day - firstDay;
+        }
+        this.bucketDates = Collections.unmodifiableList(dates);
+    }
+
+    /**
+     * 覆盖 [firstDay, lastDay] 的按天窗口
+     */
+    static AnalysisWindow days(int firstDay, int lastDay)
+    {
+        return new AnalysisWindow(firstDay, lastDay);
+    }
+
+    /**
+     * 覆盖全部统计窗口的扫描窗口，一次扫描即可得到各窗口所需的按天计数；只有一个窗口时即为该窗口本身
+     */
+    static AnalysisWindow covering(List<AnalysisWindow> windows)
+    {
+        if (windows.size() == 1)
+            return windows.get(0);
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        for (AnalysisWindow window : windows)
+        {
+            firstDay = Math.min(firstDay, window.firstDay);
+            lastDay = Math.max(lastDay, window.lastDay);
+        }
+        return new AnalysisWindow(firstDay, lastDay);
+    }
+
+    LocalDate getBaseDate()
+    {
+        return baseDate;
+    }
+
+    LogAnalyzer2.AnalysisMode getMode()
+    {
+        return mode;
+    }
+
+    int getFirstDay()
+    {
+        return firstDay;
+    }
+
+    int getLastDay()
+    {
+        return lastDay;
+    }
+
+    /**
+     * 日期范围内的天数
+     */
+    int dayCount()
+    {
+        return lastDay - firstDay + 1;
+    }
+
+    /**
+     * 是否在日期范围内的判断逻辑
+     * 日模式：baseDate所在日期（包含）前7天
+     * 周模式：baseDate所在周（包含）前6周
+     * 月模式：baseDate所在月份（包含）前6个月
+     *
+     * @param epochDay 日志行的纪元日，见 {@link LogDateParser#parseEpochDay}
+     */
+    boolean isWithinRange(int epochDay)
+    {
+        return epochDay >= firstDay && epochDay <= lastDay;
+    }
+
+    /**
+     * 范围内某天所属的统计单元序号
+     */
+    int bucketOf(int epochDay)
+    {
+        return dayToBucket[epochDay - firstDay];
+    }
+
+    /**
+     * 统计单元个数
+     */
+    int bucketCount()
+    {
+        return bucketDates.size();
+    }
+
+    /**
+     * 各统计单元的日期，按时间先后排列：日模式生成7天日期，周模式生成包含当前周及前6周的每周周一，月模式生成包含当前月及前6个月的每月首日
+     */
+    List<LocalDate> getBucketDates()
+    {
+        return bucketDates;
+    }
+}
@@ -0,0 +1,189 @@
+package com.idea;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * @ClassName: ArchiveEntrySegment
+ * @Description: 压缩日志中的一个日志文件，作为一个整体的分析任务。<br>
+ *      支持 .log.gz 轮转文件，以及采集程序打包的 .zip 日志包（包内每个日志文件为一段，包内的 .log.gz 同样支持）。
+ *      直接从压缩文件中流式解压读取，不落地临时文件；各段由分析线程池并行解压，每个任务单独打开压缩文件。
+ *      压缩内容无法随机访问，因此不做分段切分、按日期定位和增量分析，窗口外的行逐行过滤。
+ * @Author: yuanbao
+ * @Date: 2025/3/31
+ **/
+final class ArchiveEntrySegment extends LogSegment
+{
+    // 解压读取的缓冲区大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Windows自带压缩工具按系统编码（GBK）写入中文文件名，不是UTF-8时以此编码重新读取
+    private static final Charset FALLBACK_ENTRY_CHARSET = Charset.forName("GBK");
+
+    private final String entryName; // zip包内的条目名，.gz文件为null
+    private final Charset entryCharset; // zip包条目名的编码
+
+    private ArchiveEntrySegment(Path file, String entryName, Charset entryCharset, String userName, long size)
+    {
+        super(file, userName, 0, size, 0, 1);
+        this.entryName = entryName;
+        this.entryCharset = entryCharset;
+    }
+
+    /**
+     * 是否为压缩日志（.gz 或 .zip）
+     */
+    static boolean isArchive(Path file)
+    {
+        String name = file.getFileName().toString();
+        return name.endsWith(".gz") || name.endsWith(".zip");
+    }
+
+    /**
+     * 列出压缩日志中需要分析的日志文件，.gz 文件本身即为一段，.zip 包按包内顺序每个日志文件一段。
+     *
+     * @param file 压缩日志
+     * @param isLogName 判断包内文件名（不含目录）是否为日志文件
+     * @param userNameOf 从日志文件名中解析用户名
+     * @return 按包内顺序排列的分段
+     */
+    static List<ArchiveEntrySegment> list(Path file, Predicate<String> isLogName, Function<String, String> userNameOf) throws IOException
+    {
+        List<ArchiveEntrySegment> segments = new ArrayList<>();
+        if (!file.getFileName().toString().endsWith(".zip"))
+        {
+            segments.add(new ArchiveEntrySegment(file, null, null, userNameOf.apply(file.getFileName().toString()), Files.size(file)));
+            return segments;
+        }
+
+        Charset charset = StandardCharsets.UTF_8;
+        List<ZipEntry> entries;
+        try
+        {
+            entries = fileEntries(file, charset);
+        } catch (IllegalArgumentException e)
+        {
+            // 条目名不是合法的UTF-8
+            charset = FALLBACK_ENTRY_CHARSET;
+            entries = fileEntries(file, charset);
+        }
+        for (ZipEntry entry : entries)
+        {
+            String name = entry.getName();
+            String baseName = name.substring(name.lastIndexOf('/') + 1);
+            // 进度按zip解压后的大小计算，包内的 .gz 为其本身的大小
+            if (isLogName.test(baseName))
+                segments.add(new ArchiveEntrySegment(file, name, charset, userNameOf.apply(baseName), Math.max(0, entry.getSize())));
+        }
+        return segments;
+    }
+
+    /**
+     * zip包内的全部文件，按包内顺序
+     */
+    private static List<ZipEntry> fileEntries(Path file, Charset charset) throws IOException
+    {
+        List<ZipEntry> result = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(file.toFile(), charset))
+        {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements())
+            {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory())
+                    result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    String describe()
+    {
+        return entryName == null ? getFile().getFileName().toString() : getFile().getFileName() + "!/" + entryName;
+    }
+
+    /**
+     * 打开 .gz 文件本身，或zip包条目解压后的字节流，关闭时一并关闭压缩文件。
+     * .gz 文件按顺序读取，可以预读；zip包由 ZipFile 按条目随机读取，不预读
+     */
+    @Override
+    InputStream openStream(int readAhead, int readBlockSize) throws IOException
+    {
+        if (entryName == null)
+            return readAhead > 0 ? new ReadAheadInputStream(getFile(), 0, Files.size(getFile()), readAhead, readBlockSize)
+                    : Files.newInputStream(getFile());
+        ZipFile zip = new ZipFile(getFile().toFile(), entryCharset);
+        try
+        {
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null)
+                throw new IOException("压缩包内找不到日志文件：" + describe());
+            return new ZipEntryInputStream(zip, zip.getInputStream(entry));
+        } catch (IOException | RuntimeException e)
+        {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /**
+     * .gz 文件及包内的 .gz 条目再做gzip解压
+     */
+    @Override
+    InputStream decode(InputStream in) throws IOException
+    {
+        String name = entryName == null ? getFile().getFileName().toString() : entryName;
+        return name.endsWith(".gz") ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+
+    /**
+     * zip包条目的输入流，关闭时一并关闭zip包
+     */
+    private static class ZipEntryInputStream extends InputStream
+    {
+        private final ZipFile zip;
+        private final InputStream in;
+
+        ZipEntryInputStream(ZipFile zip, InputStream in)
+        {
+            this.zip = zip;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                in.close();
+            } finally
+            {
+                zip.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.idea;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @ClassName: ByteLineReader
+ * @Description: 不解码的按行读取：把字节流读入可复用的缓冲区，按 '\n' 切分，逐行给出行在缓冲区中的区间。<br>
+ *      日志行的日期和全部关键字都可直接在字节上判断，不必像 BufferedReader 那样把每个字节解码为字符、为每行创建字符串；
+ *      与文件编码无关，含非法UTF-8字节的行也照常切分。行尾的 '\r' 去掉，单独的 '\r' 不作为换行。
+ *      缓冲区在各分段间复用，扫描过程中基本不分配内存；超过缓冲区的长行临时扩大缓冲区。
+ * @Author: yuanbao
+ * @Date: 2025/4/13
+ **/
+final class ByteLineReader implements AutoCloseable
+{
+    // 缓冲区大小
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // 空闲的缓冲区，最多保留的个数
+    private static final int POOL_LIMIT = 64;
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+
+    private final InputStream in;
+    private byte[] buf;
+    private int length = 0; // 缓冲区中的有效字节数
+    private int position = 0; // 下一行的行首
+    private int lineStart;
+    private int lineEnd;
+    private boolean eof = false;
+
+    ByteLineReader(InputStream in)
+    {
+        this.in = in;
+        byte[] pooled = POOL.poll();
+        this.buf = pooled != null ? pooled : new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * 读取下一行，行的内容为 {@link #buffer()} 中的 [{@link #lineStart()}, {@link #lineEnd()})，到下次调用前有效
+     *
+     * @return 是否还有行
+     */
+    boolean next() throws IOException
+    {
+        int searchFrom = position; // 已确认没有换行符的部分不再重复查找
+        while (true)
+        {
+            for (int i = searchFrom; i < length; i++)
+            {
+                if (buf[i] == '\n')
+                {
+                    setLine(position, i);
+                    position = i + 1;
+                    return true;
+                }
+            }
+            if (eof)
+            {
+                // 最后一行没有换行符
+                if (position >= length)
+                    return false;
+                setLine(position, length);
+                position = length;
+                return true;
+            }
+            // 移动后不完整的行从缓冲区开头开始
+            searchFrom = length - position;
+            fill();
+        }
+    }
+
+    private void setLine(int start, int end)
+    {
+        lineStart = start;
+        lineEnd = end > start && buf[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * 把不完整的行移到缓冲区开头，再读入后续内容；一行超过缓冲区时扩大缓冲区
+     */
+    private void fill() throws IOException
+    {
+        if (position > 0)
+        {
+            System.arraycopy(buf, position, buf, 0, length - position);
+            length -= position;
+            position = 0;
+        }
+        if (length == buf.length)
+        {
+            byte[] larger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, larger, 0, length);
+            buf = larger;
+        }
+        int read = in.read(buf, length, buf.length - length);
+        if (read < 0)
+            eof = true;
+        else
+            length += read;
+    }
+
+    byte[] buffer()
+    {
+        return buf;
+    }
+
+    int lineStart()
+    {
+        return lineStart;
+    }
+
+    int lineEnd()
+    {
+        return lineEnd;
+    }
+
+    /**
+     * 关闭字节流，缓冲区放回复用
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (buf.length == BUFFER_SIZE && POOL.size() < POOL_LIMIT)
+            POOL.offer(buf);
+        buf = null;
+        in.close();
+    }
+}
@@ -0,0 +1,248 @@
+package com.idea;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * @ClassName: CheckpointStore
+ * @Description: 增量分析的断点记录，保存在输出目录下的 analysis_checkpoint.txt 中。<br>
+ *      每个日志文件记录：文件头部指纹、已分析到的字节偏移、以及已分析部分按天的各项计数。
+ *      采集程序每天只是在同一文件末尾追加日志，再次分析时只需读取新追加的内容，与已保存的计数相加即可。
+ *      文件头部指纹不一致（日志被轮转、替换）或文件变短（被截断）时，该文件回退为完整扫描。
+ *      依赖日志日期按顺序递增，因此只在按日期定位（--seek）开启时使用。
+ * @Author: yuanbao
+ * @Date: 2025/3/28
+ **/
+final class CheckpointStore
+{
+    // 断点文件名
+    static final String FILE_NAME = "analysis_checkpoint.txt";
+    // 文件格式版本及指标顺序，不一致时整个断点文件作废
+    private static final String HEADER = "# LogAnalysis checkpoint v1 metrics=" + Arrays.toString(StatsCube.Metric.values());
+    // 文件头部指纹所取的字节数
+    private static final int HEAD_LENGTH = 4096;
+
+    private final Path path;
+    private final String header; // 文件头，含识别规则的指纹，规则变化后原有计数不再适用
+    private final Map<String, FileCheckpoint> files = new LinkedHashMap<>();
+
+    private CheckpointStore(Path path, EventRules rules)
+    {
+        this.path = path;
+        this.header = HEADER + " rules=" + rules.fingerprint();
+    }
+
+    /**
+     * 读取输出目录下的断点文件，不存在、格式不符或识别规则已变化时返回空记录
+     */
+    static CheckpointStore load(String outputDir, EventRules rules)
+    {
+        CheckpointStore store = new CheckpointStore(Paths.get(outputDir, FILE_NAME), rules);
+        if (!Files.exists(store.path))
+            return store;
+        try (BufferedReader reader = Files.newBufferedReader(store.path, StandardCharsets.UTF_8))
+        {
+            if (!store.header.equals(reader.readLine()))
+            {
+                System.out.println("断点文件格式或识别规则已变化，本次完整分析：" + store.path);
+                return store;
+            }
+            FileCheckpoint current = null;
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] parts = line.split("\t");
+                if (parts[0].equals("F"))
+                {
+                    current = new FileCheckpoint(Long.parseLong(parts[2]), Long.parseLong(parts[3]), Integer.parseInt(parts[4]),
+                            Long.parseLong(parts[5]));
+                    store.files.put(parts[1], current);
+                } else if (parts[0].equals("D") && current != null)
+                {
+                    String[] values = parts[2].split(",");
+                    long[] counts = new long[StatsCube.METRIC_COUNT];
+                    for (int i = 0; i < counts.length; i++)
+                    {
+                        counts[i] = Long.parseLong(values[i]);
+                    }
+                    current.days.put(Integer.parseInt(parts[1]), counts);
+                }
+            }
+        } catch (IOException | RuntimeException e)
+        {
+            // 断点文件损坏时不影响分析，只是退回完整扫描
+            System.err.println("读取断点文件出错，本次完整分析：" + e.toString());
+            store.files.clear();
+        }
+        return store;
+    }
+
+    /**
+     * 写回断点文件，先写临时文件再替换，避免中途失败留下残缺的记录
+     */
+    void save() throws IOException
+    {
+        Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+        {
+            writer.write(header);
+            writer.write("\n");
+            for (Map.Entry<String, FileCheckpoint> entry : files.entrySet())
+            {
+                FileCheckpoint cp = entry.getValue();
+                writer.write("F\t" + entry.getKey() + "\t" + cp.headLength + "\t" + cp.headHash + "\t" + cp.coveredFrom + "\t" + cp.scanEnd + "\n");
+                for (Map.Entry<Integer, long[]> day : cp.days.entrySet())
+                {
+                    StringBuilder sb = new StringBuilder();
+                    for (long value : day.getValue())
+                    {
+                        if (sb.length() > 0)
+                            sb.append(',');
+                        sb.append(value);
+                    }
+                    writer.write("D\t" + day.getKey() + "\t" + sb + "\n");
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 日志文件的断点记录，没有时返回null
+     */
+    FileCheckpoint get(Path logFile)
+    {
+        return files.get(key(logFile));
+    }
+
+    void put(Path logFile, FileCheckpoint checkpoint)
+    {
+        files.put(key(logFile), checkpoint);
+    }
+
+    private static String key(Path logFile)
+    {
+        return logFile.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * 为当前文件内容新建一条空的断点记录
+     *
+     * @param channel 日志文件
+     * @param coveredFrom 记录中的计数对不早于该纪元日的日期是完整的
+     */
+    static FileCheckpoint create(FileChannel channel, int coveredFrom) throws IOException
+    {
+        long headLength = Math.min(channel.size(), HEAD_LENGTH);
+        return new FileCheckpoint(headLength, headHash(channel, headLength), coveredFrom, 0);
+    }
+
+    /**
+     * 文件前 length 个字节的CRC32，文件不足该长度时返回-1
+     */
+    private static long headHash(FileChannel channel, long length) throws IOException
+    {
+        if (channel.size() < length)
+            return -1;
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, buffer.position()) < 0)
+                return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, (int) length);
+        return crc.getValue();
+    }
+
+    /**
+     * 单个日志文件的断点：[0, scanEnd) 范围内日期不早于 coveredFrom 的日志行均已计入 days
+     */
+    static final class FileCheckpoint
+    {
+        private final long headLength; // 指纹所取的头部字节数
+        private final long headHash; // 头部字节的CRC32
+        private int coveredFrom; // 计数完整的最早纪元日
+        private long scanEnd; // 已分析到的字节偏移，总是位于行首
+        private final TreeMap<Integer, long[]> days = new TreeMap<>(); // 纪元日 -> 各指标计数
+
+        private FileCheckpoint(long headLength, long headHash, int coveredFrom, long scanEnd)
+        {
+            this.headLength = headLength;
+            this.headHash = headHash;
+            this.coveredFrom = coveredFrom;
+            this.scanEnd = scanEnd;
+        }
+
+        long getScanEnd()
+        {
+            return scanEnd;
+        }
+
+        /**
+         * 判断能否在该记录的基础上继续分析：文件头部未变、没有变短，且已有计数覆盖窗口的第一天
+         */
+        boolean canResume(FileChannel channel, AnalysisWindow window) throws IOException
+        {
+            return channel.size() >= scanEnd && window.getFirstDay() >= coveredFrom && headHash(channel, headLength) == headHash;
+        }
+
+        /**
+         * 已保存的计数中落在窗口内的部分，按 {@link StatsCube#index} 的布局以天为单位展开
+         */
+        long[] windowDays(AnalysisWindow window)
+        {
+            long[] result = new long[StatsCube.sliceLength(window.dayCount())];
+            for (Map.Entry<Integer, long[]> day : days.subMap(window.getFirstDay(), true, window.getLastDay(), true).entrySet())
+            {
+                System.arraycopy(day.getValue(), 0, result, StatsCube.index(day.getKey() - window.getFirstDay(), 0), StatsCube.METRIC_COUNT);
+            }
+            return result;
+        }
+
+        /**
+         * 记入本次新扫描的 [start, end) 范围的按天计数
+         *
+         * @param window 统计窗口，newDays 的下标相对窗口第一天
+         * @param start 本次扫描的起点
+         * @param end 本次扫描的终点
+         * @param newDays 本次扫描的计数
+         */
+        void append(AnalysisWindow window, long start, long end, long[] newDays)
+        {
+            // 本次扫描与上次扫描之间有跳过的内容时，跳过的都是窗口之前的日志，只有窗口第一天之后的计数仍是完整的
+            if (start > scanEnd)
+            {
+                coveredFrom = Math.max(coveredFrom, window.getFirstDay());
+                days.headMap(coveredFrom).clear();
+            }
+            for (int d = 0; d < window.dayCount(); d++)
+            {
+                int base = StatsCube.index(d, 0);
+                long[] counts = null;
+                for (int m = 0; m < StatsCube.METRIC_COUNT; m++)
+                {
+                    if (newDays[base + m] == 0)
+                        continue;
+                    if (counts == null)
+                        counts = days.computeIfAbsent(window.getFirstDay() + d, k -> new long[StatsCube.METRIC_COUNT]);
+                    counts[m] += newDays[base + m];
+                }
+            }
+            scanEnd = Math.max(scanEnd, end);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.idea;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * @ClassName: DayIndexStore
+ * @Description: 轮转日志（.log.1、.log.2 等）的日期索引，保存在输出目录下的 analysis_index.txt 中。<br>
+ *      轮转后的日志不再写入，每个文件记录：文件大小、修改时间，以及每天第一条日志行的字节偏移和当天的行数。
+ *      文件第一次被分析时照常二分查找，同时在分析线程池中完整读取一遍建立索引（与各段的扫描并行，可取消）；
+ *      之后按索引直接得到统计窗口的字节区间，不再二分查找，与窗口没有交集的文件不用打开。文件大小或修改时间变化时重新建立索引。
+ *      只在 --day-index 开启时使用，各方法可由多个线程同时调用。
+ *      仍在追加写入的 .log 文件每次分析都会变化，不建索引，照常二分查找。
+ *      依赖日志日期按顺序递增，因此只在按日期定位（--seek）开启时使用；建索引时发现日期倒退的文件记为无序，照常二分查找。
+ * @Author: yuanbao
+ * @Date: 2025/4/9
+ **/
+final class DayIndexStore
+{
+    // 索引文件名
+    static final String FILE_NAME = "analysis_index.txt";
+    // 文件格式版本
+    private static final String HEADER = "# LogAnalysis day index v1";
+    // 已轮转、不再写入的日志文件，如 .log.1、.log.2
+    private static final Pattern ROTATED_FILE_PATTERN = Pattern.compile(".*\\.log\\.\\d+$");
+    // 建索引时每次读取的块大小
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final Map<String, FileIndex> files = new LinkedHashMap<>();
+    private boolean changed = false; // 是否有新建的索引需要写回
+
+    private DayIndexStore(Path path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * 读取输出目录下的索引文件，不存在或格式不符时返回空记录
+     */
+    static DayIndexStore load(String outputDir)
+    {
+        DayIndexStore store = new DayIndexStore(Paths.get(outputDir, FILE_NAME));
+        if (!Files.exists(store.path))
+            return store;
+        try (BufferedReader reader = Files.newBufferedReader(store.path, StandardCharsets.UTF_8))
+        {
+            if (!HEADER.equals(reader.readLine()))
+            {
+                System.out.println("日期索引格式已变化，重新建立：" + store.path);
+                return store;
+            }
+            FileIndex current = null;
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] parts = line.split("\t");
+                if (parts[0].equals("F"))
+                {
+                    current = new FileIndex(Long.parseLong(parts[2]), Long.parseLong(parts[3]), parts[4].equals("1"));
+                    store.files.put(parts[1], current);
+                } else if (parts[0].equals("D") && current != null)
+                {
+                    current.days.put(Integer.parseInt(parts[1]), new long[] { Long.parseLong(parts[2]), Long.parseLong(parts[3]) });
+                }
+            }
+        } catch (IOException | RuntimeException e)
+        {
+            // 索引文件损坏时不影响分析，只是重新建立
+            System.err.println("读取日期索引出错，重新建立：" + e.toString());
+            store.files.clear();
+        }
+        return store;
+    }
+
+    /**
+     * 有新建的索引时写回索引文件，先写临时文件再替换
+     */
+    synchronized void save() throws IOException
+    {
+        if (!changed)
+            return;
+        Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+        {
+            writer.write(HEADER);
+            writer.write("\n");
+            for (Map.Entry<String, FileIndex> entry : files.entrySet())
+            {
+                FileIndex index = entry.getValue();
+                writer.write("F\t" + entry.getKey() + "\t" + index.size + "\t" + index.modified + "\t" + (index.sorted ? "1" : "0") + "\n");
+                for (Map.Entry<Integer, long[]> day : index.days.entrySet())
+                {
+                    writer.write("D\t" + day.getKey() + "\t" + day.getValue()[0] + "\t" + day.getValue()[1] + "\n");
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    /**
+     * 判断日志文件是否建索引：只对已轮转、不再写入的文件建索引
+     */
+    static boolean isIndexable(Path logFile)
+    {
+        return ROTATED_FILE_PATTERN.matcher(logFile.getFileName().toString()).matches();
+    }
+
+    /**
+     * 日志文件的有效索引，没有或文件大小、修改时间已变化时返回null
+     */
+    synchronized FileIndex get(Path logFile) throws IOException
+    {
+        FileIndex index = files.get(key(logFile));
+        if (index == null || index.size != Files.size(logFile) || index.modified != Files.getLastModifiedTime(logFile).toMillis())
+            return null;
+        return index;
+    }
+
+    /**
+     * 完整读取一遍日志文件，建立并记录其索引
+     *
+     * @param metrics 运行指标，记录读取的字节数；已请求取消时中止
+     * @return 索引；取消时为null，不记录
+     */
+    FileIndex build(Path logFile, AnalysisMetrics metrics) throws IOException
+    {
+        FileIndex index;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ))
+        {
+            index = build(logFile, channel, metrics);
+        }
+        if (index == null)
+            return null;
+        synchronized (this)
+        {
+            files.put(key(logFile), index);
+            changed = true;
+        }
+        return index;
+    }
+
+    private static FileIndex build(Path logFile, FileChannel channel, AnalysisMetrics metrics) throws IOException
+    {
+        long size = channel.size();
+        FileIndex index = new FileIndex(size, Files.getLastModifiedTime(logFile).toMillis(), true);
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        byte[] buf = buffer.array();
+        long bufferStart = 0; // 当前块在文件中的起始偏移
+        int length = 0; // 当前块的有效字节数
+        int i = 0;
+        boolean lineStart = true;
+        int lastDay = LogDateParser.NO_DATE;
+        long[] current = null; // 当天的 [起始偏移, 行数]
+        while (true)
+        {
+            // 行首时保证日期部分在当前块内，读到块尾时读入下一块
+            if (i >= length || (lineStart && length - i <= LogDateParser.DATE_LENGTH && bufferStart + length < size))
+            {
+                if (metrics.isCancelled())
+                    return null;
+                System.arraycopy(buf, i, buf, 0, length - i);
+                bufferStart += i;
+                length -= i;
+                i = 0;
+                buffer.clear();
+                buffer.position(length);
+                while (buffer.hasRemaining() && bufferStart + buffer.position() < size)
+                {
+                    if (channel.read(buffer, bufferStart + buffer.position()) < 0)
+                        break;
+                }
+                metrics.addExtraBytesRead(buffer.position() - length);
+                length = buffer.position();
+                if (i >= length)
+                    break;
+            }
+            if (lineStart)
+            {
+                int day = LogDateParser.parseEpochDay(buf, i, length);
+                if (day != LogDateParser.NO_DATE && day != lastDay)
+                {
+                    if (lastDay != LogDateParser.NO_DATE && day < lastDay)
+                    {
+                        // 日期不是顺序递增，索引不可用
+                        index = new FileIndex(index.size, index.modified, false);
+                        break;
+                    }
+                    current = new long[] { bufferStart + i, 0 };
+                    index.days.put(day, current);
+                    lastDay = day;
+                }
+                // 第一条带日期的行之前的内容不属于任何一天
+                if (current != null)
+                    current[1]++;
+                lineStart = false;
+            }
+            for (; i < length; i++)
+            {
+                if (buf[i] == '\n')
+                {
+                    i++;
+                    lineStart = true;
+                    break;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static String key(Path logFile)
+    {
+        return logFile.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * 单个日志文件的索引：每天第一条日志行的偏移和当天的行数（含其后不带日期的续行）
+     */
+    static final class FileIndex
+    {
+        private final long size; // 建索引时的文件大小
+        private final long modified; // 建索引时的修改时间（毫秒）
+        private final boolean sorted; // 日期是否顺序递增，否则索引为空、不可用
+        private final TreeMap<Integer, long[]> days = new TreeMap<>(); // 纪元日 -> [起始偏移, 行数]
+
+        private FileIndex(long size, long modified, boolean sorted)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.sorted = sorted;
+        }
+
+        boolean isSorted()
+        {
+            return sorted;
+        }
+
+        /**
+         * 第一条日期不早于 day 的日志行的起始偏移，与 {@link LogRangeSeeker#seek} 的结果相同
+         *
+         * @return 该行行首的偏移；不存在时返回文件大小
+         */
+        long offsetOf(int day)
+        {
+            Map.Entry<Integer, long[]> entry = days.ceilingEntry(day);
+            return entry == null ? size : entry.getValue()[0];
+        }
+
+        /**
+         * [firstDay, lastDay] 内的日志行数
+         */
+        long lineCount(int firstDay, int lastDay)
+        {
+            long lines = 0;
+            for (long[] day : days.subMap(firstDay, true, lastDay, true).values())
+            {
+                lines += day[1];
+            }
+            return lines;
+        }
+    }
+}
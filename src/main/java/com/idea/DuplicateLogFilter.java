@@ -0,0 +1,241 @@
+package com.idea;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * @ClassName: DuplicateLogFilter
+ * @Description: 去除重复采集的日志文件。<br>
+ *      采集程序每天上传到单独的目录（如 IDEA日志收集/2025-03-04），同一个 idea.log.1 会出现在多天的目录中，
+ *      分析上级目录时同一份内容会被重复计数。对同一用户的日志文件：
+ *      内容完全相同的只保留第一个；内容是另一个文件开头部分的（较早采集时文件还在追加），较早的内容只计入一次：
+ *      先找到较短的文件时，较长的文件只分析较短文件之后追加的部分，较短文件的结果照常计入，不必重新读取；
+ *      先找到较长的文件时，跳过较短的文件。文件在遍历日志目录的同时逐个加入比较，见 {@link #add}。
+ *      先用文件大小及开头、中间、末尾三个小块的CRC32快速比较，只有可能重复的文件才完整计算SHA-256确认。
+ *      比较在单独的线程中按加入的顺序进行，提交扫描任务的线程不必等待计算摘要，可以先处理此前已比较完的文件。
+ *      压缩日志不参与比较。比较时读取的字节计入运行指标的进度，完整计算摘要的过程中可以取消。
+ * @Author: yuanbao
+ * @Date: 2025/4/10
+ **/
+final class DuplicateLogFilter implements AutoCloseable
+{
+    // 抽样比较的块大小
+    private static final int SAMPLE_SIZE = 4096;
+    // 完整计算摘要时每次读取的块大小
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final Function<String, String> userOf;
+    private final AnalysisMetrics metrics;
+    private final Map<String, List<FileSample>> users = new HashMap<>(); // 用户 -> 已加入且需要分析的文件，只在比较线程中访问
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "duplicate-log-filter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param userOf 由文件名得到用户名，只比较同一用户的文件
+     * @param metrics 运行指标，记录读取的字节数；已请求取消时抛出 {@link CancellationException}
+     */
+    DuplicateLogFilter(Function<String, String> userOf, AnalysisMetrics metrics)
+    {
+        this.userOf = userOf;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 加入一个新找到的日志文件，在比较线程中按加入的顺序与同一用户此前加入的文件比较。
+     * 内容相同或为此前文件的开头部分时不需要分析；此前的文件为其开头部分时，只需分析之后追加的内容。
+     *
+     * @param logFile 日志文件，压缩日志不参与比较
+     * @return 需要分析的起始位置：0为整个文件，-1为不需要分析；其余为此前文件的大小，之前的内容已由此前的文件计入，
+     *         该位置不在行首时（较早采集时最后一行还未写完），这一行也已计入，应从下一行开始
+     */
+    Future<Long> add(Path logFile)
+    {
+        if (ArchiveEntrySegment.isArchive(logFile))
+            return CompletableFuture.completedFuture(0L);
+        return thread.submit(() -> compare(logFile));
+    }
+
+    private long compare(Path logFile) throws IOException
+    {
+        FileSample sample = FileSample.of(logFile, metrics);
+        List<FileSample> files = users.computeIfAbsent(userOf.apply(logFile.getFileName().toString()), k -> new ArrayList<>());
+        for (int i = 0; i < files.size(); i++)
+        {
+            FileSample kept = files.get(i);
+            if (sample.size == kept.size ? sample.sameContent(kept) : sample.size < kept.size && sample.isPrefixOf(kept))
+            {
+                System.out.println("正在处理文件：" + logFile + (sample.size == kept.size ? " 与 " : " 为 ") + kept.file
+                        + (sample.size == kept.size ? " 内容相同，跳过" : " 的开头部分，跳过"));
+                return -1;
+            }
+            if (kept.size < sample.size && kept.isPrefixOf(sample))
+            {
+                // 已加入的文件两两互不为开头部分，至多一个是新文件的开头部分；由新文件代替它参与之后的比较
+                System.out.println("正在处理文件：" + logFile + " 以 " + kept.file + " 为开头部分，只分析之后追加的 " + (sample.size - kept.size) + " 字节");
+                files.set(i, sample);
+                return kept.size;
+            }
+        }
+        files.add(sample);
+        return 0;
+    }
+
+    /**
+     * 结束比较线程，尚未开始的比较不再进行
+     */
+    @Override
+    public void close()
+    {
+        thread.shutdownNow();
+    }
+
+    /**
+     * 单个日志文件的大小和抽样指纹，完整摘要在需要时才计算
+     */
+    private static final class FileSample
+    {
+        final Path file;
+        final AnalysisMetrics metrics;
+        final long size;
+        final long headHash; // 开头 min(size, SAMPLE_SIZE) 字节的CRC32
+        final long sampleHash; // 开头、中间、末尾三块的CRC32
+        private byte[] digest; // 全部内容的SHA-256
+
+        private FileSample(Path file, AnalysisMetrics metrics, long size, long headHash, long sampleHash)
+        {
+            this.file = file;
+            this.metrics = metrics;
+            this.size = size;
+            this.headHash = headHash;
+            this.sampleHash = sampleHash;
+        }
+
+        static FileSample of(Path file, AnalysisMetrics metrics) throws IOException
+        {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+            {
+                long size = channel.size();
+                long headHash = crc(channel, 0, size, metrics);
+                CRC32 crc = new CRC32();
+                update(crc, channel, 0, size, metrics);
+                update(crc, channel, size / 2, size, metrics);
+                update(crc, channel, Math.max(0, size - SAMPLE_SIZE), size, metrics);
+                return new FileSample(file, metrics, size, headHash, crc.getValue());
+            }
+        }
+
+        /**
+         * 大小相同的两个文件内容是否相同
+         */
+        boolean sameContent(FileSample other) throws IOException
+        {
+            return sampleHash == other.sampleHash && Arrays.equals(digest(), other.digest());
+        }
+
+        /**
+         * 本文件是否为较长文件 other 的开头部分
+         */
+        boolean isPrefixOf(FileSample other) throws IOException
+        {
+            if (size == 0)
+                return true;
+            if (size >= SAMPLE_SIZE ? headHash != other.headHash : headHash != headCrc(other.file, size, metrics))
+                return false;
+            return Arrays.equals(digest(), sha256(other.file, size, metrics));
+        }
+
+        private byte[] digest() throws IOException
+        {
+            if (digest == null)
+                digest = sha256(file, size, metrics);
+            return digest;
+        }
+    }
+
+    /**
+     * 文件前 length 个字节的CRC32
+     */
+    private static long headCrc(Path file, long length, AnalysisMetrics metrics) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return crc(channel, 0, length, metrics);
+        }
+    }
+
+    /**
+     * 从 pos 开始、不超过 limit 的一块的CRC32
+     */
+    private static long crc(FileChannel channel, long pos, long limit, AnalysisMetrics metrics) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        update(crc, channel, pos, limit, metrics);
+        return crc.getValue();
+    }
+
+    private static void update(CRC32 crc, FileChannel channel, long pos, long limit, AnalysisMetrics metrics) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(SAMPLE_SIZE, limit - pos));
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, pos + buffer.position()) < 0)
+                break;
+        }
+        crc.update(buffer.array(), 0, buffer.position());
+        metrics.addExtraBytesRead(buffer.position());
+    }
+
+    /**
+     * 文件前 length 个字节的SHA-256，每读一块检查一次是否已请求取消
+     */
+    private static byte[] sha256(Path file, long length, AnalysisMetrics metrics) throws IOException
+    {
+        MessageDigest md;
+        try
+        {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("不支持SHA-256：" + e.getMessage(), e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+            long pos = 0;
+            while (pos < length)
+            {
+                if (metrics.isCancelled())
+                    throw new CancellationException("分析已取消");
+                buffer.clear();
+                buffer.limit((int) Math.min(BLOCK_SIZE, length - pos));
+                int n = channel.read(buffer, pos);
+                if (n < 0)
+                    break;
+                md.update(buffer.array(), 0, n);
+                metrics.addExtraBytesRead(n);
+                pos += n;
+            }
+        }
+        return md.digest();
+    }
+}
@@ -0,0 +1,568 @@
+package com.idea;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.CRC32;
+
+/**
+ * @ClassName: EventRules
+ * @Description: AI插件行为的识别规则：每条规则把日志行中的关键字或正则表达式对应到一个统计指标。<br>
+ *      未提供规则文件时使用内置规则（{@link LogAnalyzer2#DEFAULT_RULES}），可在jar包目录放置 analysis_rules.properties 或通过 --rules=文件 替换，
+ *      新增插件或日志格式变化时只需修改规则文件，无需重新打包。文件格式（UTF-8）：
+ *      rule.名称.metric=COSY_ACTION      计入的指标：COSY_ACTION、COSY_SELECT、COPILOT_ACTION、COPILOT_SELECT
+ *      rule.名称.literal=关键字           与 regex 二选一，行中出现该字符串即命中
+ *      rule.名称.regex=正则表达式          行中任意位置匹配即命中
+ *      rule.名称.weight=N                每次命中计N次，默认1
+ *      rule.名称.dedup=正则表达式          去重键：取第一个分组（没有分组时取整个匹配），同一分段内最近出现过的键不重复计数
+ *      metric.指标.divisor=N             报告中该指标的计数除以N，默认1（如Copilot每次提问在日志中记录3次）
+ *      启动时全部规则编译为一个多关键字自动机（{@link MultiPatternMatcher}），每行只扫描一遍，规则增多基本不影响扫描速度；
+ *      正则规则从表达式中取出必定出现的最长字符串作为预筛选关键字，行中出现该字符串时才执行正则，取不出时每行都执行，应尽量避免。
+ *      按字节扫描时关键字直接在UTF-8字节上匹配，只有需要执行正则（含去重键）的行才解码为字符串。
+ *      去重只在一个日志分段内进行（最近 {@link #DEDUP_KEYS} 个键），相同的键跨分段出现时各计一次，
+ *      因此用 dedup 的规则计数会随 --chunk-size、--seek 和增量检查点的分段边界略有不同；需要精确去重时应把 --chunk-size 设得足够大。
+ * @Author: yuanbao
+ * @Date: 2025/4/6
+ **/
+final class EventRules
+{
+    // jar包目录下的默认规则文件名
+    static final String FILE_NAME = "analysis_rules.properties";
+    // 每条规则记住的最近去重键个数
+    private static final int DEDUP_KEYS = 1024;
+
+    private final List<Rule> rules;
+    private final long[] divisors = new long[StatsCube.METRIC_COUNT];
+    // 全部关键字及正则预筛选关键字编译成的自动机，第 i 个关键字属于 keywordRules[i] 号规则
+    private final MultiPatternMatcher matcher;
+    // 同样的关键字在UTF-8字节上匹配的自动机，用于不解码的按字节扫描
+    private final MultiPatternMatcher byteMatcher;
+    private final int[] keywordRules;
+    // 取不出预筛选关键字、每行都要执行的正则规则
+    private final int[] unfilteredRules;
+    private final boolean dedup;
+    private final String fingerprint;
+
+    EventRules(List<Rule> rules, Map<StatsCube.Metric, Long> divisors)
+    {
+        if (rules.isEmpty())
+        {
+            System.err.println("识别规则不能为空");
+            throw new RuntimeException("识别规则不能为空");
+        }
+        this.rules = new ArrayList<>(rules);
+        Arrays.fill(this.divisors, 1);
+        for (Map.Entry<StatsCube.Metric, Long> divisor : divisors.entrySet())
+        {
+            this.divisors[divisor.getKey().ordinal()] = divisor.getValue();
+        }
+
+        List<String> keywords = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        List<Integer> unfiltered = new ArrayList<>();
+        boolean dedup = false;
+        StringBuilder canonical = new StringBuilder(Arrays.toString(this.divisors));
+        for (int r = 0; r < this.rules.size(); r++)
+        {
+            Rule rule = this.rules.get(r);
+            String keyword = rule.regex == null ? rule.literal : requiredLiteral(rule.regex.pattern());
+            if (keyword == null)
+            {
+                System.out.println("提示：正则规则 " + rule.name + " 取不出预筛选关键字，每行都会执行，可能降低分析速度");
+                unfiltered.add(r);
+            } else
+            {
+                keywords.add(keyword);
+                owners.add(r);
+            }
+            dedup |= rule.dedup != null;
+            canonical.append('\n').append(rule);
+        }
+        this.matcher = new MultiPatternMatcher(keywords.toArray(new String[0]));
+        this.byteMatcher = MultiPatternMatcher.forUtf8Bytes(keywords.toArray(new String[0]));
+        this.keywordRules = owners.stream().mapToInt(Integer::intValue).toArray();
+        this.unfilteredRules = unfiltered.stream().mapToInt(Integer::intValue).toArray();
+        this.dedup = dedup;
+        CRC32 crc = new CRC32();
+        crc.update(canonical.toString().getBytes(StandardCharsets.UTF_8));
+        this.fingerprint = Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * 读取规则文件
+     */
+    static EventRules load(Path file)
+    {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            properties.load(reader);
+        } catch (IOException e)
+        {
+            System.err.println("读取规则文件出错：" + file + " " + e.toString());
+            throw new RuntimeException("读取规则文件出错：" + file + " " + e.toString());
+        }
+        System.out.println("使用规则文件：" + file.toAbsolutePath());
+        return parse(properties, file.toString());
+    }
+
+    /**
+     * 从 rule.名称.属性、metric.指标.divisor 形式的配置中解析规则，规则按名称排序
+     *
+     * @param properties 配置
+     * @param source 配置来源，用于错误提示
+     */
+    static EventRules parse(Properties properties, String source)
+    {
+        Map<String, Map<String, String>> ruleProperties = new TreeMap<>();
+        Map<StatsCube.Metric, Long> divisors = new EnumMap<>(StatsCube.Metric.class);
+        for (String key : properties.stringPropertyNames())
+        {
+            String value = properties.getProperty(key).trim();
+            int dot = key.lastIndexOf('.');
+            if (key.startsWith("rule.") && dot > "rule.".length())
+            {
+                ruleProperties.computeIfAbsent(key.substring("rule.".length(), dot), k -> new LinkedHashMap<>()).put(key.substring(dot + 1), value);
+            } else if (key.startsWith("metric.") && key.endsWith(".divisor"))
+            {
+                StatsCube.Metric metric = parseMetric(key.substring("metric.".length(), dot), source);
+                divisors.put(metric, parsePositive(key, value, source));
+            } else
+            {
+                System.err.println("规则文件中有未知的配置项：" + key + "（" + source + "）");
+                throw new RuntimeException("规则文件中有未知的配置项：" + key + "（" + source + "）");
+            }
+        }
+
+        List<Rule> rules = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> entry : ruleProperties.entrySet())
+        {
+            String name = entry.getKey();
+            Map<String, String> attrs = new LinkedHashMap<>(entry.getValue());
+            String metric = attrs.remove("metric");
+            String literal = attrs.remove("literal");
+            String regex = attrs.remove("regex");
+            String weight = attrs.remove("weight");
+            String dedup = attrs.remove("dedup");
+            if (!attrs.isEmpty() || metric == null || (literal == null) == (regex == null))
+            {
+                System.err.println("规则 " + name + " 应有 metric，以及 literal、regex 之一，可选 weight、dedup（" + source + "）");
+                throw new RuntimeException("规则 " + name + " 应有 metric，以及 literal、regex 之一，可选 weight、dedup（" + source + "）");
+            }
+            try
+            {
+                rules.add(new Rule(name, parseMetric(metric, source), literal, regex == null ? null : Pattern.compile(regex),
+                        weight == null ? 1 : parsePositive("rule." + name + ".weight", weight, source), dedup == null ? null : Pattern.compile(dedup)));
+            } catch (PatternSyntaxException e)
+            {
+                System.err.println("规则 " + name + " 的正则表达式有误：" + e.getMessage());
+                throw new RuntimeException("规则 " + name + " 的正则表达式有误：" + e.getMessage());
+            }
+        }
+        return new EventRules(rules, divisors);
+    }
+
+    private static StatsCube.Metric parseMetric(String name, String source)
+    {
+        try
+        {
+            StatsCube.Metric metric = StatsCube.Metric.valueOf(name);
+            if (metric != StatsCube.Metric.TOTAL)
+                return metric;
+        } catch (IllegalArgumentException e)
+        {
+            // 统一在下面报错
+        }
+        System.err.println("未知的指标：" + name + "，应为 COSY_ACTION、COSY_SELECT、COPILOT_ACTION、COPILOT_SELECT 之一（" + source + "）");
+        throw new RuntimeException("未知的指标：" + name + "（" + source + "）");
+    }
+
+    private static long parsePositive(String key, String value, String source)
+    {
+        try
+        {
+            long n = Long.parseLong(value);
+            if (n >= 1)
+                return n;
+        } catch (NumberFormatException e)
+        {
+            // 统一在下面报错
+        }
+        System.err.println("配置项" + key + "应为正整数。当前为：" + value + "（" + source + "）");
+        throw new RuntimeException("配置项" + key + "应为正整数。当前为：" + value + "（" + source + "）");
+    }
+
+    /**
+     * 正则表达式匹配时必定出现的最长字符串，用于预筛选；最外层有分支、含内嵌标志等无法确定时返回null。
+     * 只取最外层、没有可选量词修饰的普通字符，转义的元字符按字面处理，偏保守：取不出时不影响正确性。
+     * 量词 {m,n} 的内容、\p{..}、\x.. 和 Unicode 转义等多字符转义整体跳过，不当作字面字符。
+     */
+    static String requiredLiteral(String regex)
+    {
+        // 内嵌标志（如忽略大小写）和 \Q...\E 引用不做分析
+        if (regex.matches(".*\\(\\?[-a-zA-Z].*") || regex.contains("\\Q"))
+            return null;
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++)
+        {
+            char c = regex.charAt(i);
+            int literal = -1; // 本位置的字面字符
+            int next = i + 1;
+            if (c == '\\' && i + 1 < regex.length())
+            {
+                char escaped = regex.charAt(i + 1);
+                next = escapeEnd(regex, i + 1);
+                if (!Character.isLetterOrDigit(escaped))
+                    literal = escaped;
+            } else if (c == '{')
+            {
+                // 跳过量词的内容，如 {2,3}
+                int close = regex.indexOf('}', i);
+                next = close < 0 ? regex.length() : close + 1;
+            } else if (c == '[')
+            {
+                // 跳过字符类
+                int j = i + 1;
+                if (j < regex.length() && regex.charAt(j) == '^')
+                    j++;
+                if (j < regex.length() && regex.charAt(j) == ']')
+                    j++;
+                while (j < regex.length() && regex.charAt(j) != ']')
+                {
+                    if (regex.charAt(j) == '\\')
+                        j++;
+                    j++;
+                }
+                next = j + 1;
+            } else if (c == '(')
+            {
+                depth++;
+            } else if (c == ')')
+            {
+                depth--;
+            } else if (c == '|' && depth == 0)
+            {
+                // 最外层的分支，没有必定出现的字符串
+                return null;
+            } else if (".^$*+?{}".indexOf(c) < 0)
+            {
+                literal = c;
+            }
+
+            char quantifier = next < regex.length() ? regex.charAt(next) : 0;
+            boolean optional = quantifier == '?' || quantifier == '*' || quantifier == '{';
+            if (literal >= 0 && depth == 0 && !optional)
+            {
+                run.append((char) literal);
+                if (quantifier == '+')
+                {
+                    // 至少出现一次，之后可能重复
+                    best = longer(best, run);
+                    run.setLength(0);
+                }
+            } else
+            {
+                best = longer(best, run);
+                run.setLength(0);
+            }
+            i = next - 1;
+        }
+        best = longer(best, run);
+        return best.isEmpty() ? null : best;
+    }
+
+    /**
+     * 转义序列之后的位置
+     *
+     * @param j 反斜杠之后的字符位置
+     */
+    private static int escapeEnd(String regex, int j)
+    {
+        char escaped = regex.charAt(j);
+        int end = j + 1;
+        switch (escaped)
+        {
+            case 'p':
+            case 'P':
+            case 'x':
+            case 'N':
+                // \p{Alpha}、\x{263A}、\N{name}，或 \pL、\xhh
+                if (end < regex.length() && regex.charAt(end) == '{')
+                {
+                    int close = regex.indexOf('}', end);
+                    return close < 0 ? regex.length() : close + 1;
+                }
+                return Math.min(regex.length(), end + (escaped == 'x' ? 2 : 1));
+            case 'u':
+                return Math.min(regex.length(), end + 4);
+            case 'c':
+                return Math.min(regex.length(), end + 1);
+            case '0':
+                // 八进制，最多3位
+                while (end < regex.length() && end < j + 4 && regex.charAt(end) >= '0' && regex.charAt(end) <= '7')
+                {
+                    end++;
+                }
+                return end;
+            case 'k':
+                // 命名分组的反向引用 \k<name>
+                int close = regex.indexOf('>', end);
+                return close < 0 ? regex.length() : close + 1;
+            default:
+                return end;
+        }
+    }
+
+    private static String longer(String best, CharSequence run)
+    {
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    /**
+     * 规则的指纹，规则变化后断点记录的计数随之作废
+     */
+    String fingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * 全部规则，按解析顺序
+     */
+    List<Rule> rules()
+    {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * 报告中该指标计数的除数
+     */
+    long divisor(StatsCube.Metric metric)
+    {
+        return divisors[metric.ordinal()];
+    }
+
+    /**
+     * 为一个日志分段创建计数器；去重状态在计数器中，每个分段（线程）单独使用，不跨分段
+     */
+    Counter newCounter()
+    {
+        return new Counter(0, null);
+    }
+
+    /**
+     * 同上，同时按当天的时段统计各指标的命中数，每个报告窗口一份
+     *
+     * @param slotMinutes 每个时段的分钟数，能整除一天的分钟数；为0时不统计时段
+     * @param dayViews 下标为行相对扫描范围第一天的序号，值为该天所属的各报告窗口的序号；不统计时段时不使用
+     */
+    Counter newCounter(int slotMinutes, int[][] dayViews)
+    {
+        return new Counter(slotMinutes, dayViews);
+    }
+
+    /**
+     * 一条识别规则
+     */
+    static final class Rule
+    {
+        final String name;
+        final StatsCube.Metric metric;
+        final String literal; // 关键字，正则规则为null
+        final Pattern regex; // 正则表达式，关键字规则为null
+        final long weight;
+        final Pattern dedup; // 去重键，不去重时为null
+
+        Rule(String name, StatsCube.Metric metric, String literal, Pattern regex, long weight, Pattern dedup)
+        {
+            if (literal != null && literal.isEmpty())
+            {
+                System.err.println("规则 " + name + " 的关键字不能为空");
+                throw new RuntimeException("规则 " + name + " 的关键字不能为空");
+            }
+            this.name = name;
+            this.metric = metric;
+            this.literal = literal;
+            this.regex = regex;
+            this.weight = weight;
+            this.dedup = dedup;
+        }
+
+        /**
+         * 关键字规则
+         */
+        static Rule literal(String name, StatsCube.Metric metric, String literal)
+        {
+            return new Rule(name, metric, literal, null, 1, null);
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + "\t" + metric + "\t" + (regex == null ? "literal\t" + literal : "regex\t" + regex.pattern()) + "\t" + weight + "\t"
+                    + (dedup == null ? "" : dedup.pattern());
+        }
+    }
+
+    /**
+     * 逐行计数，按规则把命中的行累加到对应指标
+     */
+    final class Counter
+    {
+        // 各规则最近出现过的去重键，按访问顺序淘汰
+        private final Map<Integer, LinkedHashMap<String, Boolean>> recentKeys = dedup ? new HashMap<>() : null;
+        private final int slotMinutes;
+        // 每天所属的各报告窗口
+        private final int[][] dayViews;
+        // 各报告窗口 时段 × 指标 的命中计数，下标同 {@link StatsCube#index}，不统计时段时为null
+        private final long[][] slotStats;
+        // 当前行：按字节扫描时为字节区间，需要执行正则时才解码为 lineText
+        private String lineText;
+        private byte[] lineBuf;
+        private int lineFrom;
+        private int lineTo;
+
+        Counter(int slotMinutes, int[][] dayViews)
+        {
+            this.slotMinutes = slotMinutes;
+            this.dayViews = dayViews;
+            int views = 0;
+            if (slotMinutes > 0)
+            {
+                for (int[] day : dayViews)
+                {
+                    for (int v : day)
+                    {
+                        views = Math.max(views, v + 1);
+                    }
+                }
+            }
+            this.slotStats = slotMinutes > 0 ? new long[views][StatsCube.sliceLength(TimeSlots.count(slotMinutes))] : null;
+        }
+
+        /**
+         * 各报告窗口各时段的命中计数，不统计时段时为null
+         */
+        long[][] slotStats()
+        {
+            return slotStats;
+        }
+
+        /**
+         * 统计一行命中的全部规则
+         *
+         * @param line 日志行
+         * @param userStats 天 × 指标 的计数数组
+         * @param day 该行相对窗口第一天的序号
+         */
+        void count(String line, long[] userStats, int day)
+        {
+            lineText = line;
+            lineBuf = null;
+            countFound(matcher.match(line), userStats, day);
+        }
+
+        /**
+         * 同上，统计字节数组中的一行，不解码
+         *
+         * @param buf 字节数组
+         * @param from 行首位置
+         * @param to 行尾位置（不包含，不含换行符）
+         */
+        void count(byte[] buf, int from, int to, long[] userStats, int day)
+        {
+            lineText = null;
+            lineBuf = buf;
+            lineFrom = from;
+            lineTo = to;
+            countFound(byteMatcher.match(buf, from, to), userStats, day);
+        }
+
+        private void countFound(long found, long[] userStats, int day)
+        {
+            int slot = -1; // 命中时才解析时间
+            for (int i = 0; found != 0; i++, found >>>= 1)
+            {
+                if ((found & 1L) != 0)
+                    slot = apply(keywordRules[i], userStats, day, slot);
+            }
+            for (int r : unfilteredRules)
+            {
+                slot = apply(r, userStats, day, slot);
+            }
+        }
+
+        /**
+         * 当前行的文本，按字节扫描时在第一次需要时解码，非法的UTF-8字节以替换字符代替
+         */
+        private String lineText()
+        {
+            if (lineText == null)
+                lineText = new String(lineBuf, lineFrom, lineTo - lineFrom, StandardCharsets.UTF_8);
+            return lineText;
+        }
+
+        /**
+         * 判断一条规则是否命中当前行并计数
+         *
+         * @return 该行所在的时段，尚未解析时为-1
+         */
+        private int apply(int r, long[] userStats, int day, int slot)
+        {
+            Rule rule = rules.get(r);
+            if (rule.regex != null && !rule.regex.matcher(lineText()).find())
+                return slot;
+            if (rule.dedup != null && isDuplicate(r, rule.dedup, lineText()))
+                return slot;
+            userStats[StatsCube.index(day, rule.metric)] += rule.weight;
+            if (slotStats != null && dayViews[day].length > 0)
+            {
+                if (slot < 0)
+                    slot = TimeSlots.slotOf(lineText != null ? LogDateParser.parseMinuteOfDay(lineText)
+                            : LogDateParser.parseMinuteOfDay(lineBuf, lineFrom, lineTo), slotMinutes);
+                if (slot >= 0)
+                {
+                    for (int v : dayViews[day])
+                    {
+                        slotStats[v][StatsCube.index(slot, rule.metric)] += rule.weight;
+                    }
+                }
+            }
+            return slot;
+        }
+
+        private boolean isDuplicate(int r, Pattern dedup, String line)
+        {
+            Matcher m = dedup.matcher(line);
+            if (!m.find())
+                return false;
+            String key = m.groupCount() > 0 && m.group(1) != null ? m.group(1) : m.group();
+            LinkedHashMap<String, Boolean> keys = recentKeys.computeIfAbsent(r, k -> new LinkedHashMap<String, Boolean>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+                {
+                    return size() > DEDUP_KEYS;
+                }
+            });
+            return keys.put(key, Boolean.TRUE) != null;
+        }
+    }
+}
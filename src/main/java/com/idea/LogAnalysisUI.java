@@ -10,10 +10,19 @@ import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @ClassName: LogAnalysisUI
  * @Description: 增加UI交互界面，进行日期的输入、日志目录的选择。<br>
+ *      分析过程中显示按字节计算的进度、当前文件、读取速率和预计剩余时间，并可随时取消。
  * @Author: yuanbao
  * @Date: 2025/3/4
  **/
@@ -24,7 +33,14 @@ public class LogAnalysisUI
     private JTextField dateField; // 日期输入框
     private JTextField logDirField; // 日志目录输入框
     private JButton confirmButton; // 确认按钮
+    private JButton cancelButton; // 取消按钮
+    private JProgressBar progressBar; // 按字节计算的进度
+    private JLabel statusLabel; // 当前文件、速率和预计剩余时间
     private LogAnalyzer2 logAnalyzer;
+    private volatile AnalysisMetrics currentMetrics; // 正在进行的分析的运行指标，用于取消
+
+    // 刷新进度的间隔（毫秒）
+    private static final int PROGRESS_INTERVAL_MILLIS = 500;
 
     private Instant startTime; // 新增变量：记录分析开始时间
     private Instant endTime;   // 新增变量：记录分析结束时间
@@ -91,10 +107,43 @@ public class LogAnalysisUI
 
         // 创建确认按钮
         confirmButton = new JButton("CONFIRM");
-        confirmButton.setBounds(250, 240, 200, 50);
+        confirmButton.setBounds(140, 190, 200, 50);
         confirmButton.setFont(font);
         frame.add(confirmButton);
 
+        // 取消按钮，分析进行中才可用
+        cancelButton = new JButton("CANCEL");
+        cancelButton.setBounds(360, 190, 200, 50);
+        cancelButton.setFont(font);
+        cancelButton.setEnabled(false);
+        frame.add(cancelButton);
+        cancelButton.addActionListener(new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                AnalysisMetrics metrics = currentMetrics;
+                if (metrics != null)
+                {
+                    // 扫描线程会很快停止并关闭文件，完成后由 done() 恢复界面
+                    metrics.cancel();
+                    cancelButton.setEnabled(false);
+                    cancelButton.setText("Cancelling...");
+                }
+            }
+        });
+
+        // 进度条及状态
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setBounds(50, 260, 590, 25);
+        progressBar.setStringPainted(true);
+        progressBar.setString("");
+        frame.add(progressBar);
+
+        statusLabel = new JLabel(" ");
+        statusLabel.setBounds(50, 290, 590, 30);
+        frame.add(statusLabel);
+
         confirmButton.addActionListener(new ActionListener()
         {
             @Override
@@ -115,17 +164,60 @@ public class LogAnalysisUI
                     // 将确认按钮置灰不可用，且修改为“请稍候..”
                     confirmButton.setText("Processing... Wait.");
                     confirmButton.setEnabled(false);
+                    cancelButton.setText("CANCEL");
+                    cancelButton.setEnabled(true);
+                    progressBar.setValue(0);
+                    progressBar.setString("0%");
+                    statusLabel.setText("Listing log files...");
 
                     // 使用 SwingWorker 处理耗时任务
                     String finalLogDir = logDir;
-                    new SwingWorker<Void, Void>()
+                    AnalysisMetrics metrics = new AnalysisMetrics();
+                    currentMetrics = metrics;
+                    new SwingWorker<Void, Progress>()
                     {
                         @Override
                         protected Void doInBackground() throws Exception
                         {
-                            // 在后台线程中执行日志分析方法
-                            logAnalyzer.userSelectAndAnalyze(inputDate, finalLogDir);
-                            return null;
+                            // 分析在单独的线程中执行，本线程定期读取运行指标并发布进度
+                            ExecutorService runner = Executors.newSingleThreadExecutor();
+                            try
+                            {
+                                Future<?> analysis = runner.submit(() -> {
+                                    logAnalyzer.userSelectAndAnalyze(inputDate, finalLogDir, new AnalysisOptions(), metrics);
+                                    return null;
+                                });
+                                while (true)
+                                {
+                                    try
+                                    {
+                                        analysis.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                                        return null;
+                                    } catch (TimeoutException timeout)
+                                    {
+                                        publish(new Progress(metrics));
+                                    } catch (ExecutionException ex)
+                                    {
+                                        // 抛出分析过程中的原始异常，由 done() 显示
+                                        if (ex.getCause() instanceof Exception)
+                                            throw (Exception) ex.getCause();
+                                        throw ex;
+                                    }
+                                }
+                            } finally
+                            {
+                                runner.shutdown();
+                            }
+                        }
+
+                        @Override
+                        protected void process(List<Progress> chunks)
+                        {
+                            // 只显示最新的一次
+                            Progress progress = chunks.get(chunks.size() - 1);
+                            progressBar.setValue((int) (progress.percent * 10));
+                            progressBar.setString(String.format("%.1f%%", progress.percent));
+                            statusLabel.setText(progress.describe());
                         }
 
                         @Override
@@ -141,20 +233,33 @@ public class LogAnalysisUI
                                 Duration duration = Duration.between(startTime, endTime);
                                 long seconds = duration.getSeconds();
 
+                                progressBar.setValue(progressBar.getMaximum());
+                                progressBar.setString("100%");
+                                statusLabel.setText("Completed.");
                                 JOptionPane.showMessageDialog(frame, "Log analysis completed for: " + inputDate
                                         + "\nExecution time: " + seconds + " seconds.");
 
                             }
                             catch (Exception ex)
                             {
-                                System.err.println("Error: " + ex.getMessage());
-                                JOptionPane.showMessageDialog(frame, "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                                if (ex.getCause() instanceof CancellationException)
+                                {
+                                    statusLabel.setText("Cancelled.");
+                                    JOptionPane.showMessageDialog(frame, "Log analysis cancelled for: " + inputDate);
+                                } else
+                                {
+                                    System.err.println("Error: " + ex.getMessage());
+                                    JOptionPane.showMessageDialog(frame, "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                                }
                             }
                             finally
                             {
                                 // 恢复确认按钮可用
+                                currentMetrics = null;
                                 confirmButton.setText("CONFIRM");
                                 confirmButton.setEnabled(true);
+                                cancelButton.setText("CANCEL");
+                                cancelButton.setEnabled(false);
                             }
                         }
                     }.execute();
@@ -164,8 +269,10 @@ public class LogAnalysisUI
                     JOptionPane.showMessageDialog(frame, "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
 
                     // 如果在启动 SwingWorker 时发生异常，恢复按钮状态
+                    currentMetrics = null;
                     confirmButton.setText("CONFIRM");
                     confirmButton.setEnabled(true);
+                    cancelButton.setEnabled(false);
                 }
             }
         });
@@ -179,6 +286,40 @@ public class LogAnalysisUI
         new LogAnalysisUI();
     }
 
+    /**
+     * 后台线程发布到界面的一次进度快照
+     */
+    private static class Progress
+    {
+        final double percent; // 按字节计算的进度
+        final long filesDone;
+        final long filesTotal;
+        final String currentFile;
+        final double bytesPerSecond;
+        final long etaSeconds; // 无法估算时为-1
+
+        Progress(AnalysisMetrics metrics)
+        {
+            this.percent = metrics.getProgressPercent();
+            this.filesDone = metrics.getFilesDone();
+            this.filesTotal = metrics.getFilesTotal();
+            this.currentFile = metrics.getCurrentFile();
+            this.bytesPerSecond = metrics.getBytesPerSecond();
+            this.etaSeconds = metrics.getEtaSeconds();
+        }
+
+        /**
+         * 状态栏显示的文字，如：Files 3/12 | 58.3 MB/s | ETA 0:12 | xxx_idea.log
+         */
+        String describe()
+        {
+            if (filesTotal == 0)
+                return "Locating analysis window in log files...";
+            String eta = etaSeconds < 0 ? "--:--" : String.format("%d:%02d", etaSeconds / 60, etaSeconds % 60);
+            return String.format("Files %d/%d | %.1f MB/s | ETA %s | %s", filesDone, filesTotal, bytesPerSecond / 1024 / 1024, eta, currentFile);
+        }
+    }
+
     /**
      * 自定义带提示的文本框-用于作为提示默认当前目录的 placeholder
      */
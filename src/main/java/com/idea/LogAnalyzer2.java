@@ -2,21 +2,33 @@ package com.idea;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.time.temporal.IsoFields;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 /**
  * @ClassName: LogAnalyzer2
@@ -27,6 +39,24 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  *      3. 改进文件名解析逻辑
  *      4. 支持参数输入控制统计日期、日志目录、输出目录
  *      5. 增加生成excel报告
+ *      6. 支持多线程并行分析日志文件，并行度可通过参数 --parallelism=N 指定
+ *      7. 超大日志文件按行切分为多段并行扫描，分段大小可通过参数 --chunk-size=M 指定
+ *      8. 按行首日期二分定位统计窗口，跳过窗口之前、之后的内容，可通过参数 --seek=false 关闭
+ *      9. 增量分析：参数 --checkpoint 开启后在输出目录记录每个文件的分析进度，再次分析时只读取新追加的内容
+ *      10. 支持直接读取 .log.gz 压缩文件和 .zip 日志包，无需先解压
+ *      11. 运行指标（进度、读取速率、各关键字命中数、各阶段耗时）通过JMX实时查看，结束后写入输出目录下的 analysis_metrics.txt
+ *      12. 持续监视模式：参数 --watch 开启后常驻运行，跟踪新写入的日志并定期更新报告，见 {@link LogWatcher}
+ *      13. AI插件行为的识别规则可通过规则文件配置，见 {@link EventRules}
+ *      14. 参数 --views=daily,weekly,monthly 一次扫描同时生成日、周、月多种报告
+ *      15. 参数 --histogram=hour 或 15min 统计各用户在一天中各时段使用AI插件的次数，写入Excel报告的“时段分布”表
+ *      16. 参数 --rollup 把按天的统计结果保存到输出目录，之后以 --from-rollup 直接生成任意日期的报告，不再读取日志，见 {@link RollupStore}
+ *      17. 参数 --day-index 为轮转日志（.log.1 等）建立日期索引，之后按索引定位统计窗口，见 {@link DayIndexStore}
+ *      18. 分析多天的采集目录时，去除重复采集的日志文件，见 {@link DuplicateLogFilter}
+ *      19. 在后台遍历日志目录，边遍历边分析，不必等整个目录遍历完成，见 {@link LogFileWalker}
+ *      20. 参数 --dates=日期,日期... 一次扫描生成多个日期的报告，如连续多周的日报告
+ *      21. 直接在字节上切分行、解析日期和匹配关键字，不逐行解码，见 {@link ByteLineReader}；可通过参数 --byte-scan=false 改为解码后逐行处理
+ *      22. 预读：每个分段同时发出多个异步读请求，网络共享上读取与扫描重叠，见 {@link ReadAheadInputStream}；参数 --read-ahead、--read-block 指定请求数和块大小
+ *      23. 命令行可编译为不含界面的Linux本地可执行文件（pom.xml 的 native-cli 构建，见 build_native_cli.sh）；参数 --excel=false 只生成txt报告
  * @Author: yuanbao
  * @Date: 2025/3/3
  **/
@@ -47,12 +77,37 @@ public class LogAnalyzer2
     // 增加Github Copilot的”提问“的关键字
     private static final String COPILOT_SELECT_PATTERN = "https://api.individual.githubcopilot.com/chat/completions";
 
+    // 没有规则文件时使用的内置识别规则，即以上四个关键字；Copilot每次提问在日志中记录3次，报告中除以3为真实数
+    static final EventRules DEFAULT_RULES = new EventRules(Arrays.asList(
+            EventRules.Rule.literal("cosy-action", StatsCube.Metric.COSY_ACTION, ACTION_PATTERN),
+            EventRules.Rule.literal("cosy-select", StatsCube.Metric.COSY_SELECT, SELECT_PATTERN),
+            EventRules.Rule.literal("copilot-action", StatsCube.Metric.COPILOT_ACTION, COPILOT_ACTION_PATTERN),
+            EventRules.Rule.literal("copilot-select", StatsCube.Metric.COPILOT_SELECT, COPILOT_SELECT_PATTERN)),
+            Collections.singletonMap(StatsCube.Metric.COPILOT_SELECT, 3L));
+
+    // 日志文件名：.log 和 .log.1、.log.2 等轮转文件，以及它们的 .gz 压缩文件
+    static final Pattern LOG_FILE_PATTERN = Pattern.compile(".*\\.log(\\.\\d+)?(\\.gz)?$");
+    // 采集程序打包的日志包
+    private static final Pattern LOG_BUNDLE_PATTERN = Pattern.compile(".*\\.zip$");
+
+    // 扫描线程每处理这么多行，向运行指标汇报一次本地累计的行数
+    private static final int METRICS_FLUSH_LINES = 8192;
+
+    // 结束时等待扫描线程退出的最长秒数
+    private static final int POOL_TERMINATION_SECONDS = 10;
+
+    // 流式写Excel时内存中保留的行数，超出的行写入临时文件
+    private static final int EXCEL_ROW_WINDOW = 100;
+
+    // 日期格式
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_PATTERN);
     // 月格式
     private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");    
 
     // 统计模式枚举
     enum AnalysisMode {
         DAILY,  // 日统计模式（包含当前日期的前一周）
+        WEEKLY,  // 周统计模式（包含当前ISO周的前6周）
         MONTHLY  // 月统计模式（包含当前月份的前6个月）
     }
 
@@ -75,9 +130,22 @@ public class LogAnalyzer2
      *         1. 日期（可选，格式为 yyyy-MM-dd，默认为当前日期）
      *         2. 日志目录（可选，默认为 "logs/"）
      *         3. 输出目录（可选，默认与日志目录一致）
+     *         另可在任意位置追加可选参数，如 --parallelism=4，详见 {@link AnalysisOptions}
      */
     public static void main(String[] args)
     {
+        // 先分离出 --名称=值 形式的可选参数，剩余的按位置参数处理
+        AnalysisOptions options = new AnalysisOptions();
+        List<String> positionalArgs = new ArrayList<>();
+        for (String arg : args)
+        {
+            if (AnalysisOptions.isOption(arg))
+                options.applyArg(arg);
+            else
+                positionalArgs.add(arg);
+        }
+        args = positionalArgs.toArray(new String[0]);
+
         // 获取当前JAR包所在目录
         String jarDir = getJarDirectory();
         if (jarDir == null)
@@ -87,6 +155,8 @@ public class LogAnalyzer2
             throw new RuntimeException("无法获取JAR包所在目录，程序退出。");
         }
         System.out.println("当前JAR包所在目录：" + jarDir);
+        // jar包目录下的识别规则文件
+        options.useRulesFileIn(jarDir);
 
         // 参数初始化
         String logDir = jarDir; // 日志目录-默认当前目录（TEST:logs/）
@@ -95,32 +165,12 @@ public class LogAnalyzer2
         AnalysisMode mode = AnalysisMode.DAILY; // 默认统计模式为日
 
         // 解析命令行参数
+        String dateArg = baseDate.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
         if (args.length >= 1)
         {
-            String dateArg = args[0]; // args[0]
-            if (dateArg.length() == 6)
-            { // 月模式参数，如202503
-                try
-                {
-                    baseDate = YearMonth.parse(dateArg, DateTimeFormatter.ofPattern("yyyyMM")).atDay(1);
-                } catch (Exception e)
-                {
-                    System.err.println("传参月份格式不对，应为yyyyMM。当前为：" + dateArg);
-                    throw new RuntimeException("传参月份格式不对，应为yyyyMM。当前为：" + dateArg);
-                }
-                mode = AnalysisMode.MONTHLY;
-            } else
-            { // 日模式参数，如20250303
-                try
-                {
-                    baseDate = LocalDate.parse(dateArg, DateTimeFormatter.ofPattern("yyyyMMdd"));
-                } catch (Exception e)
-                {
-                    System.err.println("传参日期格式不对，应为yyyyMMdd。当前为：" + dateArg);
-                    throw new RuntimeException("传参日期格式不对，应为yyyyMMdd。当前为：" + dateArg);
-                }
-                mode = AnalysisMode.DAILY;
-            }
+            dateArg = args[0]; // args[0]
+            baseDate = parseDateArg(dateArg);
+            mode = modeOf(dateArg);
         }
         if (args.length >= 2)
         {
@@ -133,16 +183,101 @@ public class LogAnalyzer2
         {
             outputDir = logDir; // 默认输出目录，同日志目录
         }
-        // 调用日志分析方法
-        analyzeLogs(logDir, outputDir, baseDate, mode);
+        if (options.isWatch())
+        {
+            if (!options.getDates().isEmpty())
+                System.err.println("持续监视只跟踪一个分析日期，忽略 --dates");
+            // 未指定日期时，统计窗口随当天日期滚动
+            try
+            {
+                new LogWatcher(logDir, outputDir, args.length >= 1 ? baseDate : null, options.getViews(mode), options).run();
+            } catch (IOException e)
+            {
+                System.err.println("监视日志目录失败：" + e.getMessage());
+                throw new RuntimeException("监视日志目录失败：" + e.getMessage(), e);
+            }
+            return;
+        }
+        // 调用日志分析方法，--dates 中的日期与日期参数共用一次扫描
+        List<String> dateArgs = new ArrayList<>();
+        dateArgs.add(dateArg);
+        dateArgs.addAll(options.getDates());
+        analyzeLogs(logDir, outputDir, windowsOf(dateArgs, options), options, new AnalysisMetrics());
     }
 
     /**
-     * 获取当前JAR包所在目录
+     * 由日期参数得到各报告的统计窗口：每个日期按 --views 指定的各模式（未指定时按日期参数的格式）各一个窗口，
+     * 分析日期和模式决定的窗口相同时只保留一个
+     *
+     * @param dateArgs 日期参数，yyyyMM 为月模式，yyyyMMdd 为日模式
+     */
+    static List<AnalysisWindow> windowsOf(List<String> dateArgs, AnalysisOptions options)
+    {
+        List<AnalysisWindow> windows = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String dateArg : dateArgs)
+        {
+            LocalDate baseDate = parseDateArg(dateArg);
+            for (AnalysisMode mode : options.getViews(modeOf(dateArg)))
+            {
+                if (seen.add(mode + " " + bucketLabel(mode, baseDate)))
+                    windows.add(new AnalysisWindow(baseDate, mode));
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * 日期参数对应的统计模式：yyyyMM 为月模式，其余为日模式
+     */
+    private static AnalysisMode modeOf(String dateArg)
+    {
+        return dateArg.length() == 6 ? AnalysisMode.MONTHLY : AnalysisMode.DAILY;
+    }
+
+    /**
+     * 解析日期参数，月模式参数取当月1号
+     */
+    private static LocalDate parseDateArg(String dateArg)
+    {
+        if (dateArg.length() == 6)
+        { // 月模式参数，如202503
+            try
+            {
+                return YearMonth.parse(dateArg, DateTimeFormatter.ofPattern("yyyyMM")).atDay(1);
+            } catch (Exception e)
+            {
+                System.err.println("传参月份格式不对，应为yyyyMM。当前为：" + dateArg);
+                throw new RuntimeException("传参月份格式不对，应为yyyyMM。当前为：" + dateArg);
+            }
+        } else
+        { // 日模式参数，如20250303
+            try
+            {
+                return LocalDate.parse(dateArg, DateTimeFormatter.ofPattern("yyyyMMdd"));
+            } catch (Exception e)
+            {
+                System.err.println("传参日期格式不对，应为yyyyMMdd。当前为：" + dateArg);
+                throw new RuntimeException("传参日期格式不对，应为yyyyMMdd。当前为：" + dateArg);
+            }
+        }
+    }
+
+    /**
+     * 获取当前JAR包所在目录；编译为本地可执行文件时为可执行文件所在目录
      *
      * @return JAR包所在目录的路径，如果无法获取则返回null
      */
     private static String getJarDirectory() {
+        if (isNativeImage()) {
+            // 本地可执行文件没有jar包，Linux下由 /proc/self/exe 得到可执行文件，其他系统取当前目录
+            Path exe = Paths.get("/proc/self/exe");
+            try {
+                return Files.exists(exe) ? exe.toRealPath().getParent().toString() : System.getProperty("user.dir");
+            } catch (IOException e) {
+                return System.getProperty("user.dir");
+            }
+        }
         try {
             // 获取JAR包的路径
             String jarPath = LogAnalyzer2.class.getProtectionDomain().getCodeSource().getLocation().toURI().getPath();
@@ -154,6 +289,14 @@ public class LogAnalyzer2
         }
     }
 
+    /**
+     * 是否运行在GraalVM编译的本地可执行文件中（见 pom.xml 的 native-cli 构建）
+     */
+    static boolean isNativeImage()
+    {
+        return System.getProperty("org.graalvm.nativeimage.imagecode") != null;
+    }
+
     /**
      * 核心方法：分析日志文件，统计用户行为。
      * 步骤：
@@ -165,80 +308,692 @@ public class LogAnalyzer2
      *         日志文件目录
      * @param outputDir
      *         输出文件目录
-     * @param baseDate
-     *         分析日期
+     * @param windows
+     *         各报告的统计窗口，共用一次扫描，每个窗口生成一份报告，见 {@link #windowsOf}
+     * @param options
+     *         可选参数，如并行度
+     * @param metrics
+     *         运行指标，调用方可据此显示进度或取消分析；取消时抛出 {@link CancellationException}，不生成报告
      */
-    private static void analyzeLogs(String logDir, String outputDir, LocalDate baseDate, AnalysisMode mode)
+    private static void analyzeLogs(String logDir, String outputDir, List<AnalysisWindow> windows, AnalysisOptions options, AnalysisMetrics metrics)
     {
         try
         {
+            // 统计结果，用户按日志文件的顺序排列，保证多次运行输出一致
+            // 数据结构：用户 × 日期（统计单元） × 行为 -> 次数   【重要】
+            // 每份报告一个统计窗口，扫描范围覆盖全部窗口
+            List<StatsCube> stats;
+            // 时段统计：用户 × 时段 × 行为，每个统计窗口一份，只含窗口内的天
+            List<StatsCube> histograms = null;
+            if (options.isFromRollup())
+            {
+                // 直接由按天汇总生成各报告，不读取日志
+                if (options.getHistogramMinutes() > 0)
+                    System.err.println("按天汇总中没有时段计数，--from-rollup 时忽略 --histogram");
+                metrics.register();
+                metrics.startPhase(AnalysisMetrics.Phase.AGGREGATE);
+                RollupStore rollups = new RollupStore(outputDir, options.getRules());
+                stats = new ArrayList<>();
+                for (AnalysisWindow view : windows)
+                {
+                    stats.add(rollups.query(view));
+                }
+            } else
+            {
+                if (options.getHistogramMinutes() > 0)
+                {
+                    histograms = new ArrayList<>();
+                    for (int i = 0; i < windows.size(); i++)
+                    {
+                        histograms.add(new StatsCube(TimeSlots.count(options.getHistogramMinutes())));
+                    }
+                }
+                stats = scanLogDir(logDir, outputDir, windows, options, histograms, metrics);
+            }
 
-            List<Path> logFiles = new ArrayList<>();
-            // 检查日志目录是否存在
-            if (!Files.exists(Paths.get(logDir)))
+            // 将统计结果输出写入报告文件
+            metrics.startPhase(AnalysisMetrics.Phase.REPORT);
+            List<String> reportNames = reportNames(windows);
+            for (int i = 0; i < windows.size(); i++)
             {
-                System.err.println("错误：日志目录不存在。请检查日志目录：" + logDir);
-                throw new RuntimeException("错误：日志目录不存在。请检查日志目录：" + logDir);
+                generateReport(stats.get(i), outputDir, reportNames.get(i), windows.get(i), options.getRules());
+
+                // 新增：生成Excel报告
+                if (options.isExcel())
+                    generateExcelReport(stats.get(i), histograms != null ? histograms.get(i) : null, outputDir, reportNames.get(i), windows.get(i),
+                            options.getRules());
             }
-            // 检查日志目录下是否有log日志文件，有的话则获取
+
+            metrics.startPhase(AnalysisMetrics.Phase.IDLE);
             try
             {
-                // 获取日志目录下所有 .log 文件 和 .log.1、.log.2等文件
-                logFiles = Files.walk(Paths.get(logDir))
-                        .filter(Files::isRegularFile)
-                        // 修改此处增加适配".log.1"、".log.2"等格式，原来只适配".log"。取文件名而不是取路径防止无匹配
-                        .filter(path -> path.getFileName().toString().matches(".*\\.log(\\.\\d+)?$"))
-                        .collect(Collectors.toList());
+                metrics.writeTo(outputDir);
             } catch (IOException e)
             {
-                System.err.println("获取日志文件出错：" + e.toString());
-                throw new RuntimeException("获取日志文件出错：" + e.toString());
+                // 指标只用于观察，写入失败不影响报告
+                System.err.println("写入运行指标出错：" + e.toString());
             }
+        } catch (CancellationException e)
+        {
+            System.out.println("分析已取消");
+            throw e;
+        } catch (Exception e)
+        {
+            e.printStackTrace();
+            throw new RuntimeException("处理日志文件出错：" + e.toString());
+        }
+    }
 
+    /**
+     * 扫描日志目录下的全部日志文件，按需使用断点记录、写入按天汇总
+     *
+     * @param windows
+     *         各报告的统计窗口
+     * @param histograms
+     *         各统计窗口的时段统计结果，与 windows 一一对应；为null时不统计时段
+     * @return 每个统计窗口一份 用户 × 日期 × 行为 的计数，与 windows 一一对应
+     */
+    private static List<StatsCube> scanLogDir(String logDir, String outputDir, List<AnalysisWindow> windows, AnalysisOptions options,
+            List<StatsCube> histograms, AnalysisMetrics metrics) throws IOException, InterruptedException
+    {
+        // 检查日志目录是否存在
+        if (!Files.exists(Paths.get(logDir)))
+        {
+            System.err.println("错误：日志目录不存在。请检查日志目录：" + logDir);
+            throw new RuntimeException("错误：日志目录不存在。请检查日志目录：" + logDir);
+        }
+
+        AnalysisWindow window = AnalysisWindow.covering(windows);
+        // 写入按天汇总时，另按天统计整个扫描范围
+        List<AnalysisWindow> scanWindows = windows;
+        AnalysisWindow dayWindow = null;
+        if (options.isRollup())
+        {
+            dayWindow = AnalysisWindow.days(window.getFirstDay(), window.getLastDay());
+            scanWindows = new ArrayList<>(windows);
+            scanWindows.add(dayWindow);
+        }
+        metrics.register();
+        metrics.startPhase(AnalysisMetrics.Phase.SCAN);
+        CheckpointStore checkpoints = null;
+        if (options.isCheckpoint())
+        {
+            if (!options.isSeek())
+                System.err.println("增量分析依赖按日期定位，--seek=false 时忽略 --checkpoint");
+            else if (options.getHistogramMinutes() > 0)
+                System.err.println("断点记录中没有时段计数，--histogram 时忽略 --checkpoint");
+            else
+                checkpoints = CheckpointStore.load(outputDir, options.getRules());
+        }
+        // 轮转日志的日期索引同样依赖日志日期顺序递增
+        DayIndexStore indexes = null;
+        if (options.isDayIndex())
+        {
+            if (!options.isSeek())
+                System.err.println("日期索引依赖按日期定位，--seek=false 时忽略 --day-index");
+            else
+                indexes = DayIndexStore.load(outputDir);
+        }
+        // 在后台遍历日志目录，找到的文件随即开始分析：
+        // 所有 .log 文件 和 .log.1、.log.2等文件，以及 .gz 压缩文件和 .zip 日志包，取文件名而不是取路径防止无匹配
+        List<StatsCube> stats;
+        // 分析多天的采集目录时，同一份日志会出现多次
+        try (LogFileWalker walker = new LogFileWalker(Paths.get(logDir),
+                name -> LOG_FILE_PATTERN.matcher(name).matches() || LOG_BUNDLE_PATTERN.matcher(name).matches());
+             DuplicateLogFilter duplicates = options.isDedup() ? new DuplicateLogFilter(LogAnalyzer2::extractRealName, metrics) : null)
+        {
+            walker.start();
+            stats = scanLogFiles(walker, duplicates, window, scanWindows, options, checkpoints, indexes, histograms, metrics);
             // 如果没有找到日志文件，输出错误信息并终止程序
-            if (logFiles == null || logFiles.isEmpty())
+            if (walker.getFileCount() == 0)
             {
                 System.err.println("错误：日志目录内未找到任何log日志文件。请检查日志目录：" + logDir);
                 throw new RuntimeException("错误：日志目录内未找到任何log日志文件。请检查日志目录：" + logDir);
             }
+        }
+        if (indexes != null)
+        {
+            try
+            {
+                indexes.save();
+            } catch (IOException e)
+            {
+                // 索引只影响下次分析的速度，写入失败不影响本次报告
+                System.err.println("写入日期索引出错：" + e.toString());
+            }
+        }
+        if (checkpoints != null)
+        {
+            try
+            {
+                checkpoints.save();
+            } catch (IOException e)
+            {
+                // 断点只影响下次分析的速度，写入失败不影响本次报告
+                System.err.println("写入断点文件出错：" + e.toString());
+            }
+        }
+        if (dayWindow != null)
+        {
+            try
+            {
+                new RollupStore(outputDir, options.getRules()).write(stats.remove(stats.size() - 1), dayWindow);
+            } catch (IOException e)
+            {
+                // 按天汇总只用于以后的报告，写入失败不影响本次报告
+                System.err.println("写入按天汇总出错：" + e.toString());
+            }
+        }
+        return stats;
+    }
 
-            // 用于存储统计结果的 Map
-            // 数据结构：用户名 -> 日期 -> 行为 -> 次数   【重要】
-            Map<String, Map<LocalDate, Map<String, Integer>>> stats = new HashMap<>();
+    /**
+     * 并行分析所有日志文件。
+     * 文件由 {@link LogFileWalker} 边遍历边给出，每取到一批就立即确定各文件需要读取的字节区间（统计窗口对应的区间，扣除断点之前已分析过的部分），
+     * 再按分段大小切分为一个或多个 {@link LogSegment}，每段由线程池中的一个任务单独统计，得到该段自己的 天 × 行为 计数数组；
+     * 各段交给 {@link SegmentScheduler}，线程池忙时等待的段按大小从大到小开始（跨越各批），减少最后只剩一个大段还在扫描的时间。
+     * 全部完成后再按文件的找到顺序及段的顺序依次累加到总结果中，因此并行度、分段大小和提交顺序都不影响最终报告的内容和顺序。
+     *
+     * @param walker
+     *         正在遍历的日志目录
+     * @param duplicates
+     *         重复采集的日志文件的比较，为null时不去重；每批文件先全部交给它比较，再按顺序取得结果，比较与确定区间、提交扫描任务同时进行
+     * @param window
+     *         扫描窗口，覆盖全部统计窗口
+     * @param windows
+     *         各报告的统计窗口
+     * @param options
+     *         可选参数，使用其中的并行度、分段大小和是否按日期定位
+     * @param checkpoints
+     *         断点记录，为null时不做增量分析
+     * @param indexes
+     *         轮转日志的日期索引，为null时不使用索引
+     * @param histograms
+     *         时段统计结果，与 windows 中前面的各报告窗口一一对应（按天汇总的窗口不统计时段）；为null时不统计时段，不能与断点记录同时使用
+     * @param metrics
+     *         运行指标，扫描全部完成后进入汇总阶段；已请求取消时抛出 {@link CancellationException}
+     * @return 每个统计窗口一份 用户 × 日期 × 行为 的计数，与 windows 一一对应
+     */
+    private static List<StatsCube> scanLogFiles(LogFileWalker walker, DuplicateLogFilter duplicates, AnalysisWindow window, List<AnalysisWindow> windows,
+            AnalysisOptions options, CheckpointStore checkpoints, DayIndexStore indexes, List<StatsCube> histograms, AnalysisMetrics metrics)
+            throws IOException, InterruptedException
+    {
+        // 用户按日志文件的顺序编号；没有窗口内日志的用户也要出现在报告中
+        List<StatsCube> stats = new ArrayList<>();
+        for (AnalysisWindow view : windows)
+        {
+            stats.add(new StatsCube(view.bucketCount()));
+        }
+        int[][] dayViews = histograms != null ? dayViews(window, windows.subList(0, histograms.size())) : null;
 
-            // 遍历每个日志文件，分别处理避免内存占用过高
-            for (Path logFile : logFiles)
+        List<FileScan> fileScans = new ArrayList<>();
+        List<LogSegment> segments = new ArrayList<>();
+        List<FileScan> segmentOwners = new ArrayList<>();
+        List<Future<SegmentResult>> futures = new ArrayList<>(); // 与 segments 一一对应
+        List<Future<?>> indexFutures = new ArrayList<>(); // 建立日期索引的任务
+        Set<Path> failedFiles = ConcurrentHashMap.newKeySet();
+        long bytesTotal = 0;
+        ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
+        SegmentScheduler scheduler = new SegmentScheduler(pool, options.getParallelism());
+        // 取消时不等遍历、扫描告一段落：结束遍历，尚未完成的段随即返回，正在扫描的线程被中断
+        Runnable stop = () -> {
+            walker.close();
+            scheduler.cancel();
+            pool.shutdownNow();
+        };
+        metrics.onCancel(stop);
+        try
+        {
+            List<Path> found = new ArrayList<>();
+            while (takeLogFiles(walker, found))
             {
-                // 提取用户名（从文件名中解析）
-                String userName = extractRealName(logFile.getFileName().toString());
-                System.out.print("正在处理文件：" + logFile.getFileName() + " 用户名：" + userName);
-                stats.putIfAbsent(userName, new HashMap<>());
+                // 提取用户名（从文件名中解析），确定读取区间并切分大文件
+                int batchStart = segments.size();
+                int fileScansStart = fileScans.size();
+                List<Future<Long>> duplicateChecks = new ArrayList<>();
+                if (duplicates != null)
+                {
+                    for (Path logFile : found)
+                    {
+                        duplicateChecks.add(duplicates.add(logFile));
+                    }
+                }
+                for (int f = 0; f < found.size(); f++)
+                {
+                    if (metrics.isCancelled())
+                        throw new CancellationException("分析已取消");
+                    Path logFile = found.get(f);
+                    // 重复的文件不再分析；以此前文件为开头部分的文件只分析之后追加的内容
+                    long from = duplicates != null ? duplicateCheck(duplicateChecks.get(f)) : 0;
+                    if (from < 0)
+                        continue;
+                    List<FileScan> planned = new ArrayList<>();
+                    if (ArchiveEntrySegment.isArchive(logFile))
+                    {
+                        // 压缩日志中的每个日志文件整体作为一段，用户名取自压缩包内的文件名
+                        for (ArchiveEntrySegment segment : ArchiveEntrySegment.list(logFile, name -> LOG_FILE_PATTERN.matcher(name).matches(),
+                                LogAnalyzer2::extractRealName))
+                        {
+                            FileScan fileScan = new FileScan(logFile, segment.getUserName(), window);
+                            fileScan.segments = Collections.singletonList(segment);
+                            planned.add(fileScan);
+                        }
+                        if (planned.isEmpty())
+                            System.out.println("正在处理文件：" + logFile.getFileName() + " 压缩包内没有日志文件，跳过");
+                    } else
+                    {
+                        planned.add(planFileScan(logFile, extractRealName(logFile.getFileName().toString()), window, options, checkpoints, indexes, from));
+                    }
 
-                // 缓冲流逐行处理日志文件
-                try (BufferedReader reader = Files.newBufferedReader(logFile))
+                    for (FileScan fileScan : planned)
+                    {
+                        // 各份计数按同样的顺序登记用户，编号一致
+                        for (StatsCube cube : stats)
+                        {
+                            fileScan.user = cube.internUser(fileScan.userName);
+                        }
+                        if (histograms != null)
+                        {
+                            for (StatsCube histogram : histograms)
+                            {
+                                histogram.internUser(fileScan.userName);
+                            }
+                        }
+                        fileScan.pendingSegments.set(fileScan.segments.size());
+                        fileScans.add(fileScan);
+                        if (fileScan.segments.isEmpty())
+                        {
+                            System.out.println("正在处理文件：" + logFile.getFileName() + " 用户名：" + fileScan.userName + " 无需读取的新内容，跳过");
+                            metrics.fileDone();
+                        }
+                        for (LogSegment segment : fileScan.segments)
+                        {
+                            segments.add(segment);
+                            segmentOwners.add(fileScan);
+                            futures.add(null);
+                        }
+                    }
+                }
+                found.clear();
+
+                // 每段一个任务，线程池忙时与此前各批尚未开始的段一起按大小从大到小排队
+                for (int i = batchStart; i < segments.size(); i++)
+                {
+                    LogSegment segment = segments.get(i);
+                    FileScan owner = segmentOwners.get(i);
+                    bytesTotal += segment.size();
+                    futures.set(i, scheduler.submit(segment.size(), () -> {
+                        EventRules.Counter counter = options.getRules().newCounter(histograms != null ? options.getHistogramMinutes() : 0, dayViews);
+                        long[] segmentDays = options.isByteScan() ? scanSegment(segment, window, counter, options, failedFiles, metrics)
+                                : scanSegmentLines(segment, window, counter, options, failedFiles, metrics);
+                        if (owner.pendingSegments.decrementAndGet() == 0)
+                            metrics.fileDone();
+                        return new SegmentResult(segmentDays, counter.slotStats());
+                    }));
+                }
+                // 尚无索引的轮转日志在全部分段之后建立索引，供下次分析使用
+                for (int f = fileScansStart; f < fileScans.size(); f++)
+                {
+                    Path file = fileScans.get(f).file;
+                    if (fileScans.get(f).needsIndex)
+                        indexFutures.add(scheduler.submit(-1, () -> indexes.build(file, metrics)));
+                }
+                // 压缩包内的每个日志文件各算一个文件，进度按需要读取的字节数计算；遍历完成前总数随找到的文件增加
+                metrics.setFilesTotal(fileScans.size());
+                metrics.setBytesTotal(bytesTotal);
+            }
+
+            // 等待全部段扫描完成，出错的段在合并时按顺序报告
+            for (Future<SegmentResult> future : futures)
+            {
+                if (metrics.isCancelled())
+                    break;
+                try
+                {
+                    future.get();
+                } catch (ExecutionException | CancellationException e)
+                {
+                    // 见下方合并及取消
+                }
+            }
+            for (Future<?> future : indexFutures)
+            {
+                if (metrics.isCancelled())
+                    break;
+                try
                 {
-                    String line;
-                    while ((line = reader.readLine()) != null)
+                    future.get();
+                } catch (CancellationException e)
+                {
+                    // 见下方取消
+                } catch (ExecutionException e)
+                {
+                    // 索引只影响下次分析的速度，建立失败时下次重新建立
+                    System.err.println("建立日期索引出错：" + e.getCause());
+                }
+            }
+            // 取消后各段只统计了一部分，结果不完整，不再汇总
+            if (metrics.isCancelled())
+                throw new CancellationException("分析已取消");
+            metrics.startPhase(AnalysisMetrics.Phase.AGGREGATE);
+
+            // 按文件及段的顺序合并各任务的局部结果
+            for (int i = 0; i < segments.size(); i++)
+            {
+                try
+                {
+                    SegmentResult result = futures.get(i).get();
+                    segmentOwners.get(i).add(result.days);
+                    if (histograms != null)
                     {
-                        processLine(line, stats.get(userName), baseDate, mode);
+                        for (int v = 0; v < histograms.size(); v++)
+                        {
+                            histograms.get(v).addUserSlice(segmentOwners.get(i).user, result.slots[v]);
+                        }
                     }
-                } catch (IOException e)
+                } catch (ExecutionException e)
                 {
-                    e.printStackTrace();
+                    throw new RuntimeException("处理日志文件出错：" + segments.get(i).describe() + " " + e.getCause(), e.getCause());
                 }
-                System.out.println(" finished!");
             }
+        } finally
+        {
+            metrics.removeCancelHook(stop);
+            // 等待扫描线程退出、关闭各自打开的文件后再返回
+            pool.shutdownNow();
+            pool.awaitTermination(POOL_TERMINATION_SECONDS, TimeUnit.SECONDS);
+        }
 
-            // 将统计结果输出写入报告文件
-            generateReport(stats, outputDir, baseDate, mode);
+        for (FileScan fileScan : fileScans)
+        {
+            for (int v = 0; v < windows.size(); v++)
+            {
+                stats.get(v).addUserDays(fileScan.user, fileScan.reusedDays, window, windows.get(v));
+                stats.get(v).addUserDays(fileScan.user, fileScan.newDays, window, windows.get(v));
+            }
+            // 读取出错的文件保留原有断点，下次重新读取出错的部分
+            if (fileScan.checkpoint != null && !failedFiles.contains(fileScan.file))
+            {
+                fileScan.checkpoint.append(window, fileScan.start, fileScan.end, fileScan.newDays);
+                checkpoints.put(fileScan.file, fileScan.checkpoint);
+            }
+        }
+        return stats;
+    }
 
-            // 新增：生成Excel报告
-            generateExcelReport(stats, outputDir, baseDate, mode);
-        } catch (Exception e)
+    /**
+     * 扫描窗口中每天所属的各统计窗口
+     *
+     * @return 下标为相对扫描窗口第一天的序号，值为包含该天的统计窗口的序号
+     */
+    private static int[][] dayViews(AnalysisWindow window, List<AnalysisWindow> views)
+    {
+        int[][] dayViews = new int[window.dayCount()][];
+        for (int day = 0; day < dayViews.length; day++)
+        {
+            int epochDay = window.getFirstDay() + day;
+            dayViews[day] = IntStream.range(0, views.size()).filter(v -> views.get(v).isWithinRange(epochDay)).toArray();
+        }
+        return dayViews;
+    }
+
+    /**
+     * 等待并取出目录遍历找到的下一批日志文件
+     *
+     * @return 是否还有文件
+     */
+    private static boolean takeLogFiles(LogFileWalker walker, List<Path> found) throws InterruptedException
+    {
+        try
+        {
+            return walker.takeAvailable(found);
+        } catch (IOException e)
+        {
+            System.err.println("获取日志文件出错：" + e.toString());
+            throw new RuntimeException("获取日志文件出错：" + e.toString());
+        }
+    }
+
+    /**
+     * 取得重复日志的比较结果
+     *
+     * @return 需要分析的起始位置，-1为不需要分析，见 {@link DuplicateLogFilter#add}
+     */
+    private static long duplicateCheck(Future<Long> check) throws IOException, InterruptedException
+    {
+        try
+        {
+            return check.get();
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof CancellationException)
+                throw (CancellationException) e.getCause();
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException("比较重复日志出错：" + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * 确定单个日志文件需要读取的字节区间，并切分为若干段。
+     * 开启按日期定位时只读取统计窗口对应的区间，有日期索引的轮转日志按索引直接得到该区间，窗口内没有日志时不打开文件，
+     * 尚无索引时照常二分查找并标记为需要建立索引；有可用的断点时，断点之前的部分直接取保存的计数，只读取之后新追加的内容。
+     * 压缩日志不经过这里，见 {@link ArchiveEntrySegment}。
+     *
+     * @param from 此前已由另一个文件计入的开头部分的长度，0为整个文件都需要分析；不为0时从其后的行首开始，不使用也不保存断点
+     */
+    private static FileScan planFileScan(Path logFile, String userName, AnalysisWindow window, AnalysisOptions options, CheckpointStore checkpoints,
+            DayIndexStore indexes, long from) throws IOException
+    {
+        FileScan fileScan = new FileScan(logFile, userName, window);
+        // 断点记录的是整个文件的计数，与开头部分的计数重复
+        if (from > 0)
+            checkpoints = null;
+        DayIndexStore.FileIndex index = indexes != null && DayIndexStore.isIndexable(logFile) ? indexes.get(logFile) : null;
+        if (index != null && index.isSorted() && checkpoints == null && index.offsetOf(window.getFirstDay()) >= index.offsetOf(window.getLastDay() + 1))
+        {
+            // 索引表明窗口内没有日志，不用打开文件
+            fileScan.segments = Collections.emptyList();
+            return fileScan;
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ))
+        {
+            long start = 0;
+            long end = channel.size();
+            fileScan.needsIndex = indexes != null && DayIndexStore.isIndexable(logFile) && index == null;
+            if (index != null && index.isSorted())
+            {
+                // 按索引直接得到窗口的字节区间
+                start = index.offsetOf(window.getFirstDay());
+                end = index.offsetOf(window.getLastDay() + 1);
+                System.out.println("按日期索引定位：" + logFile.getFileName() + " 窗口内 " + index.lineCount(window.getFirstDay(), window.getLastDay()) + " 行");
+            } else if (options.isSeek())
+            {
+                // 窗口之前和之后的内容都不需要读取
+                LogRangeSeeker seeker = new LogRangeSeeker(channel);
+                start = seeker.seek(window.getFirstDay());
+                end = seeker.seek(window.getLastDay() + 1);
+            }
+            if (from > 0)
+                start = Math.max(start, LogSegment.nextLineStart(channel, from - 1, channel.size()));
+            if (checkpoints != null)
+            {
+                CheckpointStore.FileCheckpoint checkpoint = checkpoints.get(logFile);
+                if (checkpoint != null && checkpoint.canResume(channel, window))
+                {
+                    // 断点之前的内容已分析过，直接使用保存的计数
+                    fileScan.reusedDays = checkpoint.windowDays(window);
+                    start = Math.max(start, checkpoint.getScanEnd());
+                } else
+                {
+                    if (checkpoint != null)
+                        System.out.println("日志文件已轮转、截断或统计窗口早于断点记录，重新分析：" + logFile.getFileName());
+                    checkpoint = CheckpointStore.create(channel, window.getFirstDay());
+                }
+                fileScan.checkpoint = checkpoint;
+            }
+            fileScan.start = start;
+            fileScan.end = Math.max(start, end);
+            fileScan.segments = LogSegment.split(channel, logFile, userName, start, end, options.getChunkSize());
+        }
+        return fileScan;
+    }
+
+    /**
+     * 单个分段的统计结果
+     */
+    private static class SegmentResult
+    {
+        final long[] days; // 天 × 行为 的计数
+        final long[][] slots; // 各统计窗口 时段 × 行为 的计数，不统计时段时为null
+
+        SegmentResult(long[] days, long[][] slots)
+        {
+            this.days = days;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * 单个日志文件的分析过程：读取区间、切分出的各段，以及按天累计的计数
+     */
+    private static class FileScan
+    {
+        final Path file;
+        final String userName; // 文件所属用户
+        int user; // 用户编号
+        long start; // 本次读取的起点
+        long end; // 本次读取的终点
+        List<LogSegment> segments;
+        final AtomicInteger pendingSegments = new AtomicInteger(); // 尚未扫描完的段数
+        boolean needsIndex; // 是否需要为该文件建立日期索引
+        CheckpointStore.FileCheckpoint checkpoint; // 断点记录，不做增量分析时为null
+        long[] reusedDays; // 从断点记录中取得的窗口内计数
+        final long[] newDays; // 本次读取得到的计数
+
+        FileScan(Path file, String userName, AnalysisWindow window)
+        {
+            this.file = file;
+            this.userName = userName;
+            this.reusedDays = new long[StatsCube.sliceLength(window.dayCount())];
+            this.newDays = new long[StatsCube.sliceLength(window.dayCount())];
+        }
+
+        void add(long[] segmentDays)
+        {
+            for (int i = 0; i < newDays.length; i++)
+            {
+                newDays[i] += segmentDays[i];
+            }
+        }
+    }
+
+    /**
+     * 分析日志文件中的一段，返回该段的局部统计结果。
+     *
+     * @param segment
+     *         日志文件分段
+     * @param window
+     *         统计窗口
+     * @param rules
+     *         识别规则
+     * @param failedFiles
+     *         读取出错的文件
+     * @param metrics
+     *         运行指标，行数先在本地累计，每 METRICS_FLUSH_LINES 行汇报一次，同时检查是否已取消
+     * @return 天 × 行为 的计数数组，天为相对窗口第一天的序号，下标见 {@link StatsCube#index}；取消时为不完整的计数
+     */
+    static long[] scanSegment(LogSegment segment, AnalysisWindow window, EventRules rules, Set<Path> failedFiles, AnalysisMetrics metrics)
+    {
+        return scanSegment(segment, window, rules.newCounter(), new AnalysisOptions(), failedFiles, metrics);
+    }
+
+    /**
+     * 同上，由调用方提供识别规则的计数器，以便取得其中的时段计数。直接在字节上逐行处理，不解码
+     *
+     * @param options 其中的预读请求数和块大小用于读取本段
+     */
+    static long[] scanSegment(LogSegment segment, AnalysisWindow window, EventRules.Counter counter, AnalysisOptions options,
+            Set<Path> failedFiles, AnalysisMetrics metrics)
+    {
+        long[] segmentStats = new long[StatsCube.sliceLength(window.dayCount())];
+        if (metrics.isCancelled())
+            return segmentStats;
+        metrics.setCurrentFile(segment.describe());
+        int lines = 0; // 尚未汇报的行数
+        int linesWithoutDate = 0;
+
+        // 复用的字节缓冲区逐行处理日志文件
+        try (ByteLineReader reader = new ByteLineReader(segment.openContent(metrics, options.getReadAhead(), options.getReadBlockSize())))
+        {
+            while (reader.next())
+            {
+                if (!processLine(reader.buffer(), reader.lineStart(), reader.lineEnd(), segmentStats, window, counter))
+                    linesWithoutDate++;
+                if (++lines == METRICS_FLUSH_LINES)
+                {
+                    metrics.addLines(lines, linesWithoutDate);
+                    lines = 0;
+                    linesWithoutDate = 0;
+                    if (metrics.isCancelled())
+                        break;
+                }
+            }
+        } catch (IOException e)
         {
             e.printStackTrace();
-            throw new RuntimeException("处理日志文件出错：" + e.toString());
+            failedFiles.add(segment.getFile());
         }
+        metrics.addLines(lines, linesWithoutDate);
+        return finishSegment(segment, segmentStats, metrics);
+    }
+
+    /**
+     * 同上，按UTF-8解码后逐行处理（--byte-scan=false）
+     */
+    static long[] scanSegmentLines(LogSegment segment, AnalysisWindow window, EventRules.Counter counter, AnalysisOptions options,
+            Set<Path> failedFiles, AnalysisMetrics metrics)
+    {
+        long[] segmentStats = new long[StatsCube.sliceLength(window.dayCount())];
+        if (metrics.isCancelled())
+            return segmentStats;
+        metrics.setCurrentFile(segment.describe());
+        int lines = 0; // 尚未汇报的行数
+        int linesWithoutDate = 0;
+
+        // 缓冲流逐行处理日志文件
+        try (BufferedReader reader = segment.openReader(metrics, options.getReadAhead(), options.getReadBlockSize()))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (!processLine(line, segmentStats, window, counter))
+                    linesWithoutDate++;
+                if (++lines == METRICS_FLUSH_LINES)
+                {
+                    metrics.addLines(lines, linesWithoutDate);
+                    lines = 0;
+                    linesWithoutDate = 0;
+                    if (metrics.isCancelled())
+                        break;
+                }
+            }
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            failedFiles.add(segment.getFile());
+        }
+        metrics.addLines(lines, linesWithoutDate);
+        return finishSegment(segment, segmentStats, metrics);
+    }
+
+    private static long[] finishSegment(LogSegment segment, long[] segmentStats, AnalysisMetrics metrics)
+    {
+        metrics.addSegmentCounts(segmentStats);
+        // 多线程下整行输出，避免不同文件的信息交错
+        if (!metrics.isCancelled())
+            System.out.println("正在处理文件：" + segment.describe() + " 用户名：" + segment.getUserName() + " finished!");
+        return segmentStats;
     }
 
     /**
@@ -247,80 +1002,67 @@ public class LogAnalyzer2
      * @param fileName 日志文件名
      * @return 用户名
      */
-    private static String extractRealName(String fileName)
+    static String extractRealName(String fileName)
     {
         // 文件名格式：xxx_用户名_idea.log
 //        return fileName.substring(fileName.lastIndexOf('_') + 1, fileName.lastIndexOf('.')); // 取最后一个下划线之后的字符串作为用户名
         return fileName.substring(fileName.lastIndexOf('_', fileName.lastIndexOf('_') - 1) + 1, fileName.lastIndexOf('_')); // 取倒数第二个下划线到倒数第一个下划线之间的字符串作为用户名
     }
 
-    /**
-     * 是否在日期范围内的判断逻辑
-     * 日模式：baseDate所在日期（包含）前7天
-     * 月模式：baseDate所在月份（包含）前6个月
-     */
-    private static boolean isWithinRange(LocalDate logDate, LocalDate baseDate, AnalysisMode mode) {
-
-        // 获取baseDate所在月的最后一天
-        LocalDate lastDayOfMonth = baseDate.withDayOfMonth(baseDate.lengthOfMonth());
-
-        return mode == AnalysisMode.DAILY ?
-                logDate.isAfter(baseDate.minusDays(7)) && !logDate.isAfter(baseDate) :
-                logDate.isAfter(baseDate.minusMonths(6).withDayOfMonth(1)) && !logDate.isAfter(lastDayOfMonth); // 如果是月模式的话就取6个月前的第一天到当月的最后一天
-    }
-
     /**
      * 处理日志文件中的一行，更新统计结果。
      *
      * @param line
      *         日志行
      * @param userStats
-     *         用户行为统计结果
-     * @param baseDate
-     *         分析日期
+     *         用户行为统计结果，天 × 行为 的计数数组
+     * @param window
+     *         统计窗口
+     * @param counter
+     *         识别规则的计数器，每个分段一个
+     * @return 行首是否有日期
      */
-    private static void processLine(String line, Map<LocalDate, Map<String, Integer>> userStats, LocalDate baseDate, AnalysisMode mode)
+    static boolean processLine(String line, long[] userStats, AnalysisWindow window, EventRules.Counter counter)
     {
-        // 按空格分割日志行，第一部分为日期，第二部分为内容
-        String[] parts = line.split(" ", 2);
-        if (parts.length < 2)
-            return;
+        // 解析行首的日期（yyyy-MM-dd 加空格），续行、异常堆栈等没有日期的行直接跳过
+        int logDay = LogDateParser.parseEpochDay(line);
+        if (logDay == LogDateParser.NO_DATE)
+            return false;
 
-        try
+        // 根据模式判断是否在统计范围内
+        if (window.isWithinRange(logDay))
         {
-            // 解析日志行中的日期
-            LocalDate logDate = LocalDate.parse(parts[0], DateTimeFormatter.ofPattern(DATE_PATTERN));
-
-            // 根据模式判断是否在统计范围内
-            if (isWithinRange(logDate, baseDate, mode))
-            {
-                // 如果是按月统计，则需要将日期设置为月份的1号
-                if (mode == AnalysisMode.MONTHLY)
-                    logDate = logDate.withDayOfMonth(1);
+            // 相对窗口第一天的序号，合并时再归入日或月
+            int day = logDay - window.getFirstDay();
 
+            // 基础统计
+            userStats[StatsCube.index(day, StatsCube.Metric.TOTAL)]++;
 
-                // 更新统计结果
-                userStats.computeIfAbsent(logDate, k -> new HashMap<>());
-                Map<String, Integer> dailyStats = userStats.get(logDate);
-
-                // 基础统计
-                dailyStats.merge("总记录数", 1, Integer::sum);
+            // 行为统计：写代码、提问、Copilot写代码、Copilot提问，一次扫描得到全部命中的规则
+            counter.count(line, userStats, day);
+        }
+        return true;
+    }
 
-                // 行为统计
-                if (line.contains(ACTION_PATTERN)) // 写代码行为
-                    dailyStats.merge(ACTION_PATTERN, 1, Integer::sum);
-                if (line.contains(SELECT_PATTERN)) // 提问行为
-                    dailyStats.merge(SELECT_PATTERN, 1, Integer::sum);
-                if (line.contains(COPILOT_ACTION_PATTERN)) // Copilot写代码行为
-                    dailyStats.merge(COPILOT_ACTION_PATTERN, 1, Integer::sum);
-                if (line.contains(COPILOT_SELECT_PATTERN)) // Copilot提问行为
-                    dailyStats.merge(COPILOT_SELECT_PATTERN, 1, Integer::sum);
-            }
-        } catch (DateTimeParseException e)
+    /**
+     * 同上，处理字节数组中的一行，不解码
+     *
+     * @param buf 字节数组
+     * @param from 行首位置
+     * @param to 行尾位置（不包含，不含换行符）
+     */
+    static boolean processLine(byte[] buf, int from, int to, long[] userStats, AnalysisWindow window, EventRules.Counter counter)
+    {
+        int logDay = LogDateParser.parseEpochDay(buf, from, to);
+        if (logDay == LogDateParser.NO_DATE)
+            return false;
+        if (window.isWithinRange(logDay))
         {
-            // 如果日期解析失败，跳过该行
-            return;
+            int day = logDay - window.getFirstDay();
+            userStats[StatsCube.index(day, StatsCube.Metric.TOTAL)]++;
+            counter.count(buf, from, to, userStats, day);
         }
+        return true;
     }
 
     /**
@@ -330,54 +1072,57 @@ public class LogAnalyzer2
      *         统计结果
      * @param outputDir
      *         输出目录
-     * @param baseDate
-     *         分析日期
+     * @param window
+     *         统计窗口
+     * @param rules
+     *         识别规则，报告中的计数按其中各指标的除数换算
+     */
+    static void generateReport(StatsCube stats, String outputDir, AnalysisWindow window, EventRules rules) throws IOException
+    {
+        generateReport(stats, outputDir, reportName(window), window, rules);
+    }
+
+    /**
+     * 同上，指定报告文件名（不含扩展名）
      */
-    private static void generateReport(Map<String, Map<LocalDate, Map<String, Integer>>> stats, String outputDir, LocalDate baseDate, AnalysisMode mode) throws IOException
+    static void generateReport(StatsCube stats, String outputDir, String reportName, AnalysisWindow window, EventRules rules) throws IOException
     {
+        AnalysisMode mode = window.getMode();
         // 输出文件路径
-        // 按日模式和月模式分别生成不同的文件名
-        String fileName = mode == AnalysisMode.DAILY ? "analysis_report_daily.txt" : "analysis_report_monthly.txt";
+        String fileName = reportName + ".txt";
         Path outputPath = Paths.get(outputDir, fileName);
         try (BufferedWriter writer = Files.newBufferedWriter(outputPath))
         {
+            // 获取日期范围
+            List<LocalDate> dateRange = window.getBucketDates();
+
             // 遍历每个用户的统计结果
-            for (Map.Entry<String, Map<LocalDate, Map<String, Integer>>> entry : stats.entrySet())
+            for (int user = 0; user < stats.userCount(); user++)
             {
-                String realName = entry.getKey();
+                String realName = stats.userName(user);
                 writer.write(realName + "\n");
                 System.out.printf("%n姓名：%s%n", realName);
 
-                // 获取日期范围
-                List<LocalDate> dateRange = generateDateRange(baseDate, mode);
-
-
                 // 遍历指定日期范围内的每一天
-                for (LocalDate logDate : dateRange)
+                for (int bucket = 0; bucket < dateRange.size(); bucket++)
                 {
+                    LocalDate logDate = dateRange.get(bucket);
                     // 获取当天的统计结果
-                    Map<String, Integer> dailyStats = entry.getValue().getOrDefault(logDate, new HashMap<>());
+                    long total = stats.get(user, bucket, StatsCube.Metric.TOTAL);
+                    long action = stats.get(user, bucket, StatsCube.Metric.COSY_ACTION) / rules.divisor(StatsCube.Metric.COSY_ACTION);
+                    long select = stats.get(user, bucket, StatsCube.Metric.COSY_SELECT) / rules.divisor(StatsCube.Metric.COSY_SELECT);
 
                     // 写入当天的统计结果
                     // 拆分打印，领导可能不一定要展示总次数
-                    if (mode == AnalysisMode.DAILY)
-                    {
-                        writer.write(String.format("%s", logDate.format(DateTimeFormatter.ofPattern(DATE_PATTERN))));// 日期
-                    } else if (mode == AnalysisMode.MONTHLY)
-                    {
-                        writer.write(String.format("%s", logDate.format(DateTimeFormatter.ofPattern("yyyy-MM"))));// 月份
-                    }
-                    writer.write(String.format(" 总记录数: %d", dailyStats.getOrDefault("总记录数", 0))); // 看情况需不需要展示当日总记录数
-                    writer.write(String.format(" AI总次数: %d", dailyStats.getOrDefault(ACTION_PATTERN, 0) + dailyStats.getOrDefault(SELECT_PATTERN, 0))); // AI总次数=写代码+提问
-                    writer.write(String.format(" 写代码: %d", dailyStats.getOrDefault(ACTION_PATTERN, 0)));
-                    writer.write(String.format(" 提问: %d", dailyStats.getOrDefault(SELECT_PATTERN, 0)));
+                    writer.write(bucketLabel(mode, logDate)); // 日期、周或月份
+                    writer.write(String.format(" 总记录数: %d", total)); // 看情况需不需要展示当日总记录数
+                    writer.write(String.format(" AI总次数: %d", action + select)); // AI总次数=写代码+提问
+                    writer.write(String.format(" 写代码: %d", action));
+                    writer.write(String.format(" 提问: %d", select));
                     writer.write("\n");
 
                     // 控制台打印
-                    System.out.printf("%s 总记录数: %d AI总次数: %d 写代码: %d 提问: %d%n", mode == AnalysisMode.DAILY ? logDate.format(DateTimeFormatter.ofPattern(DATE_PATTERN))
-                            : logDate.format(DateTimeFormatter.ofPattern("yyyy-MM"))
-                            , dailyStats.getOrDefault("总记录数", 0), dailyStats.getOrDefault(ACTION_PATTERN, 0) + dailyStats.getOrDefault(SELECT_PATTERN, 0)
-                            , dailyStats.getOrDefault(ACTION_PATTERN, 0), dailyStats.getOrDefault(SELECT_PATTERN, 0));
+                    System.out.printf("%s 总记录数: %d AI总次数: %d 写代码: %d 提问: %d%n", bucketLabel(mode, logDate), total, action + select, action, select);
                 }
                 writer.write("\n"); // 添加一个空行分隔用户
             }
@@ -388,13 +1133,84 @@ public class LogAnalyzer2
         }
     }
 
+    /**
+     * 报告文件名（不含扩展名）：按日、周、月模式分别为 analysis_report_daily、analysis_report_weekly、analysis_report_monthly
+     */
+    private static String reportName(AnalysisWindow window)
+    {
+        return "analysis_report_" + window.getMode().name().toLowerCase();
+    }
+
+    /**
+     * 各统计窗口的报告文件名，同一模式有多个窗口时再加上分析日期所在的统计单元，
+     * 如 analysis_report_daily_2025-03-04、analysis_report_weekly_2025-W10、analysis_report_monthly_2025-03
+     */
+    private static List<String> reportNames(List<AnalysisWindow> windows)
+    {
+        List<String> names = new ArrayList<>();
+        for (AnalysisWindow window : windows)
+        {
+            long sameMode = windows.stream().filter(w -> w.getMode() == window.getMode()).count();
+            names.add(sameMode > 1 ? reportName(window) + "_" + bucketLabel(window.getMode(), window.getBaseDate()) : reportName(window));
+        }
+        return names;
+    }
+
+    /**
+     * 统计单元在报告中的文字：日模式为日期，周模式为ISO周（如2025-W14），月模式为月份
+     */
+    private static String bucketLabel(AnalysisMode mode, LocalDate date)
+    {
+        if (mode == AnalysisMode.DAILY)
+            return date.format(DATE_FORMATTER);
+        if (mode == AnalysisMode.WEEKLY)
+            return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+        return date.format(MONTH_FORMATTER);
+    }
+
     /**
      * 新增生成Excel报告
+     * 使用流式工作簿，内存中只保留最近 EXCEL_ROW_WINDOW 行，用户数很多时内存占用也不会随行数增长；单元格样式只创建一次供各行共用。
+     */
+    static void generateExcelReport(StatsCube stats, String outputDir, AnalysisWindow window, EventRules rules) throws IOException
+    {
+        generateExcelReport(stats, null, outputDir, window, rules);
+    }
+
+    /**
+     * 同上，histogram 不为null时增加“时段分布”表
+     */
+    static void generateExcelReport(StatsCube stats, StatsCube histogram, String outputDir, AnalysisWindow window, EventRules rules) throws IOException
+    {
+        generateExcelReport(stats, histogram, outputDir, reportName(window), window, rules);
+    }
+
+    /**
+     * 同上，指定报告文件名（不含扩展名）
      */
-    private static void generateExcelReport(Map<String, Map<LocalDate, Map<String, Integer>>> stats, String outputDir, LocalDate baseDate, AnalysisMode mode) throws IOException
+    static void generateExcelReport(StatsCube stats, StatsCube histogram, String outputDir, String reportName, AnalysisWindow window, EventRules rules)
+            throws IOException
     {
         // 创建Excel工作簿和工作表
-        Workbook workbook = new XSSFWorkbook();
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_ROW_WINDOW);
+        try
+        {
+            writeExcelReport(workbook, stats, histogram, outputDir, reportName, window, rules);
+        } finally
+        {
+            // 删除流式写入产生的临时文件
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * 把报告写入给定的工作簿并保存；正式报告用流式工作簿，基准测试也用它与非流式写入对比
+     */
+    static void writeExcelReport(Workbook workbook, StatsCube stats, StatsCube histogram, String outputDir, String reportName, AnalysisWindow window,
+            EventRules rules) throws IOException
+    {
+        AnalysisMode mode = window.getMode();
         Sheet sheet = workbook.createSheet("日志分析报告");
 
         // 表头
@@ -424,24 +1240,30 @@ public class LogAnalyzer2
 
         // 填充数据
         int rowNum = 1;
-        List<LocalDate> dateRange = generateDateRange(baseDate, mode);
-        for (Map.Entry<String, Map<LocalDate, Map<String, Integer>>> entry : stats.entrySet())
+        List<LocalDate> dateRange = window.getBucketDates();
+        // 各统计单元的日期/月份文字，所有用户共用
+        String[] dateLabels = new String[dateRange.size()];
+        for (int bucket = 0; bucket < dateLabels.length; bucket++)
         {
-            String realName = entry.getKey();
-            for (LocalDate logDate : dateRange)
+            dateLabels[bucket] = bucketLabel(mode, dateRange.get(bucket));
+        }
+        for (int user = 0; user < stats.userCount(); user++)
+        {
+            String realName = stats.userName(user);
+            for (int bucket = 0; bucket < dateLabels.length; bucket++)
             {
-                Map<String, Integer> dailyStats = entry.getValue().getOrDefault(logDate, new HashMap<>());
+                long action = stats.get(user, bucket, StatsCube.Metric.COSY_ACTION) / rules.divisor(StatsCube.Metric.COSY_ACTION);
+                long select = stats.get(user, bucket, StatsCube.Metric.COSY_SELECT) / rules.divisor(StatsCube.Metric.COSY_SELECT);
                 Row row = sheet.createRow(rowNum++);
                 row.createCell(0).setCellValue(rowNum - 1); // 序号
                 row.createCell(1).setCellValue(realName); // 姓名
-                row.createCell(2).setCellValue(mode == AnalysisMode.DAILY ? logDate.format(DateTimeFormatter.ofPattern(DATE_PATTERN))
-                        : logDate.format(DateTimeFormatter.ofPattern("yyyy-MM")));
-                row.createCell(3).setCellValue(dailyStats.getOrDefault("总记录数", 0));
-                row.createCell(4).setCellValue(dailyStats.getOrDefault(ACTION_PATTERN, 0) + dailyStats.getOrDefault(SELECT_PATTERN, 0));
-                row.createCell(5).setCellValue(dailyStats.getOrDefault(ACTION_PATTERN, 0));
-                row.createCell(6).setCellValue(dailyStats.getOrDefault(SELECT_PATTERN, 0));
-                row.createCell(7).setCellValue(dailyStats.getOrDefault(COPILOT_ACTION_PATTERN, 0));
-                row.createCell(8).setCellValue(dailyStats.getOrDefault(COPILOT_SELECT_PATTERN, 0) / 3); // Copilot提问次数除以3为真实数
+                row.createCell(2).setCellValue(dateLabels[bucket]);
+                row.createCell(3).setCellValue(stats.get(user, bucket, StatsCube.Metric.TOTAL));
+                row.createCell(4).setCellValue(action + select);
+                row.createCell(5).setCellValue(action);
+                row.createCell(6).setCellValue(select);
+                row.createCell(7).setCellValue(stats.get(user, bucket, StatsCube.Metric.COPILOT_ACTION) / rules.divisor(StatsCube.Metric.COPILOT_ACTION));
+                row.createCell(8).setCellValue(stats.get(user, bucket, StatsCube.Metric.COPILOT_SELECT) / rules.divisor(StatsCube.Metric.COPILOT_SELECT)); // 内置规则中Copilot提问次数除以3为真实数
             }
         }
 
@@ -466,26 +1288,28 @@ public class LogAnalyzer2
                 sheet2.setColumnWidth(i, 256 * 15); // 第2列宽度为15个字符   姓名
             }
         }
+        // 序号居中，所有行共用同一个样式
+        CellStyle centerStyle = workbook.createCellStyle();
+        centerStyle.setAlignment(HorizontalAlignment.CENTER);
         // 填充数据
         int rowNum2 = 1;
-        for (Map.Entry<String, Map<LocalDate, Map<String, Integer>>> entry : stats.entrySet())
+        for (int user = 0; user < stats.userCount(); user++)
         {
             Row row = sheet2.createRow(rowNum2++);
             Cell seqCell = row.createCell(0);
             seqCell.setCellValue(rowNum2 - 1); // 序号
-            row.createCell(1).setCellValue(entry.getKey()); // 姓名
+            row.createCell(1).setCellValue(stats.userName(user)); // 姓名
 
             // 设置序号居中
-            CellStyle cellStyle = workbook.createCellStyle();
-            cellStyle.setAlignment(HorizontalAlignment.CENTER);
-            seqCell.setCellStyle(cellStyle);
+            seqCell.setCellStyle(centerStyle);
         }
 
+        if (histogram != null)
+            writeHistogramSheet(workbook, histogram, rules);
 
 
         // 写入文件
-        // 按日模式和月模式分别生成不同的文件名
-        String fileName = mode == AnalysisMode.DAILY ? "analysis_report_daily.xlsx" : "analysis_report_monthly.xlsx";
+        String fileName = reportName + ".xlsx";
         Path excelPath = Paths.get(outputDir, fileName);
         try (FileOutputStream fileOut = new FileOutputStream(excelPath.toFile()))
         {
@@ -496,37 +1320,47 @@ public class LogAnalyzer2
             System.err.println("写入Excel文件出错：" + e.toString());
             throw new RuntimeException("写入Excel文件出错：" + e.toString());
         }
-
-        // 关闭工作簿
-        workbook.close();
     }
 
     /**
-     * 动态生成日期范围
-     * 日模式：生成7天日期
-     * 月模式：生成包含当前月及前6个月的每月首日
+     * 时段分布表：每个用户每个时段一行，为统计窗口内各天该时段的合计
      */
-    private static List<LocalDate> generateDateRange(LocalDate date, AnalysisMode mode)
+    private static void writeHistogramSheet(Workbook workbook, StatsCube histogram, EventRules rules)
     {
-        List<LocalDate> dates = new ArrayList<>();
-        if (mode == AnalysisMode.DAILY)
+        Sheet sheet = workbook.createSheet("时段分布");
+        Row headerRow = sheet.createRow(0);
+        String[] headers = {"序号", "姓名", "时段", "通义-写代码", "通义-提问", "Copilot-写代码", "Copilot-提问"};
+        StatsCube.Metric[] metrics = {StatsCube.Metric.COSY_ACTION, StatsCube.Metric.COSY_SELECT, StatsCube.Metric.COPILOT_ACTION, StatsCube.Metric.COPILOT_SELECT};
+        for (int i = 0; i < headers.length; i++)
         {
-            for (int i = 0; i < 7; i++)
-            {
-                dates.add(date.minusDays(6 - i));
-            }
-        } else
+            headerRow.createCell(i).setCellValue(headers[i]);
+            sheet.setColumnWidth(i, 256 * (i == 0 ? 5 : 15));
+        }
+
+        int slotMinutes = TimeSlots.MINUTES_PER_DAY / histogram.bucketCount();
+        String[] slotLabels = new String[histogram.bucketCount()];
+        for (int slot = 0; slot < slotLabels.length; slot++)
         {
-            for (int i = 6; i >= 0; i--)
+            slotLabels[slot] = TimeSlots.label(slot, slotMinutes);
+        }
+        int rowNum = 1;
+        for (int user = 0; user < histogram.userCount(); user++)
+        {
+            String realName = histogram.userName(user);
+            for (int slot = 0; slot < slotLabels.length; slot++)
             {
-                YearMonth targetMonth = YearMonth.from(date).minusMonths(i);
-                dates.add(targetMonth.atDay(1));
+                Row row = sheet.createRow(rowNum++);
+                row.createCell(0).setCellValue(rowNum - 1); // 序号
+                row.createCell(1).setCellValue(realName); // 姓名
+                row.createCell(2).setCellValue(slotLabels[slot]);
+                for (int m = 0; m < metrics.length; m++)
+                {
+                    row.createCell(3 + m).setCellValue(histogram.get(user, slot, metrics[m]) / rules.divisor(metrics[m]));
+                }
             }
         }
-        return dates;
     }
 
-
     /**
      * @MethodName: userSelectAndAnalyze
      * @Description: 提供方法给交互界面使用，传参输入日期和日志目录，进行日志分析。与Main方法相似。
@@ -537,9 +1371,72 @@ public class LogAnalyzer2
      * @Date: 2025/3/4
      **/
     public void userSelectAndAnalyze(String selectDateStr, String selectLogDir) throws Exception
+    {
+        userSelectAndAnalyze(selectDateStr, selectLogDir, new AnalysisOptions());
+    }
+
+    /**
+     * @MethodName: userSelectAndAnalyze
+     * @Description: 同上，可指定并行度
+     * @param selectDateStr 选择的日期/月份
+     * @param selectLogDir 选择的日志目录
+     * @param parallelism 并行度
+     * @Return void
+     * @Author: yuanbao
+     * @Date: 2025/3/20
+     **/
+    public void userSelectAndAnalyze(String selectDateStr, String selectLogDir, int parallelism) throws Exception
+    {
+        userSelectAndAnalyze(selectDateStr, selectLogDir, new AnalysisOptions().setParallelism(parallelism));
+    }
+
+    /**
+     * @MethodName: userSelectAndAnalyze
+     * @Description: 同上，传入完整的可选参数
+     * @param selectDateStr 选择的日期/月份
+     * @param selectLogDir 选择的日志目录
+     * @param options 可选参数
+     * @Return void
+     * @Author: yuanbao
+     * @Date: 2025/3/20
+     **/
+    public void userSelectAndAnalyze(String selectDateStr, String selectLogDir, AnalysisOptions options) throws Exception
+    {
+        userSelectAndAnalyze(selectDateStr, selectLogDir, options, new AnalysisMetrics());
+    }
+
+    /**
+     * @MethodName: userSelectAndAnalyze
+     * @Description: 同上，由调用方传入运行指标，用于在分析过程中显示进度、取消分析
+     * @param selectDateStr 选择的日期/月份
+     * @param selectLogDir 选择的日志目录
+     * @param options 可选参数
+     * @param metrics 运行指标，调用其 cancel() 后分析尽快停止并抛出 CancellationException
+     * @Return void
+     * @Author: yuanbao
+     * @Date: 2025/4/4
+     **/
+    public void userSelectAndAnalyze(String selectDateStr, String selectLogDir, AnalysisOptions options, AnalysisMetrics metrics) throws Exception
+    {
+        userSelectAndAnalyze(Collections.singletonList(selectDateStr), selectLogDir, options, metrics);
+    }
+
+    /**
+     * @MethodName: userSelectAndAnalyze
+     * @Description: 批量生成多个日期的报告，所有日期共用一次扫描，每个日期（及 --views 中的每种模式）各生成一份报告；
+     *      同一模式有多个日期时报告文件名带上日期，如 analysis_report_daily_2025-03-04.xlsx
+     * @param selectDateStrs 选择的各个日期/月份
+     * @param selectLogDir 选择的日志目录
+     * @param options 可选参数
+     * @param metrics 运行指标，调用其 cancel() 后分析尽快停止并抛出 CancellationException
+     * @Return void
+     * @Author: yuanbao
+     * @Date: 2025/4/12
+     **/
+    public void userSelectAndAnalyze(List<String> selectDateStrs, String selectLogDir, AnalysisOptions options, AnalysisMetrics metrics) throws Exception
     {
         // 根据用户输入的日期进行日志分析
-        System.out.println("Analyzing logs for the date: " + selectDateStr);
+        System.out.println("Analyzing logs for the date: " + String.join(",", selectDateStrs));
 
         // 获取当前JAR包所在目录
         String jarDir = getJarDirectory();
@@ -550,41 +1447,15 @@ public class LogAnalyzer2
             throw new RuntimeException("无法获取JAR包所在目录，程序退出。");
         }
         System.out.println("当前JAR包所在目录：" + jarDir);
+        // jar包目录下的识别规则文件
+        options.useRulesFileIn(jarDir);
 
         // 参数初始化
         String logDir = jarDir; // 日志目录-默认当前目录（TEST:logs/）
         String outputDir = ""; // 输出目录，默认同日志目录
-        LocalDate baseDate = LocalDate.now(); // 默认分析日期为当前日期
-        AnalysisMode mode = AnalysisMode.DAILY; // 默认统计模式为日
 
-        // 解析命令行参数
-        String dateArg = selectDateStr; // args[0]
-        if (dateArg.length() == 6)
-        { // 月模式参数，如202503
-            try
-            {
-                baseDate = YearMonth.parse(dateArg, DateTimeFormatter.ofPattern("yyyyMM")).atDay(1);
-            } catch (Exception e)
-            {
-                System.err.println("传参月份格式不对，应为yyyyMM。当前为：" + dateArg);
-                //                    return;
-                throw new RuntimeException("传参月份格式不对，应为yyyyMM。当前为：" + dateArg);
-            }
-            mode = AnalysisMode.MONTHLY;
-        } else
-        { // 日模式参数，如20250303
-            try
-            {
-                baseDate = LocalDate.parse(dateArg, DateTimeFormatter.ofPattern("yyyyMMdd"));
-            } catch (Exception e)
-            {
-                System.err.println("传参日期格式不对，应为yyyyMMdd。当前为：" + dateArg);
-                //                    return;
-                throw new RuntimeException("传参日期格式不对，应为yyyyMMdd。当前为：" + dateArg);
-            }
-            mode = AnalysisMode.DAILY;
-
-        }
+        // 解析日期参数
+        List<AnalysisWindow> windows = windowsOf(selectDateStrs, options);
         if (selectLogDir != null && selectLogDir.length() > 0)
         {
             logDir = selectLogDir;
@@ -592,6 +1463,6 @@ public class LogAnalyzer2
         outputDir = logDir; // 默认输出目录，同日志目录
 
         // 调用日志分析方法
-        analyzeLogs(logDir, outputDir, baseDate, mode);
+        analyzeLogs(logDir, outputDir, windows, options, metrics);
     }
 }
\ No newline at end of file
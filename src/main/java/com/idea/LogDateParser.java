@@ -0,0 +1,132 @@
+package com.idea;
+
+/**
+ * @ClassName: LogDateParser
+ * @Description: 日志行首日期和时间的快速解析。<br>
+ *      日志行以定长的 yyyy-MM-dd 加一个空格开头，这里逐字符解码为纪元日（自1970-01-01起的天数），之后的 HH:mm 同样按固定位置解码为当天的分钟数，
+ *      不创建任何对象，也不靠抛异常来判断续行、异常堆栈等没有日期的行。
+ *      判定规则与原先 line.split(" ", 2) 后再用 LocalDate.parse 解析第一段的结果保持一致，
+ *      包括对 2月30日 这类日期按月末处理（DateTimeFormatter 默认的 SMART 解析方式）。
+ * @Author: yuanbao
+ * @Date: 2025/3/25
+ **/
+final class LogDateParser
+{
+    // 行首没有合法日期时的返回值
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    // 行首没有合法时间时的返回值
+    static final int NO_TIME = -1;
+
+    // 日期部分的长度，即 yyyy-MM-dd
+    static final int DATE_LENGTH = 10;
+    // 日期加时间到分钟的长度，即 yyyy-MM-dd HH:mm
+    static final int MINUTE_LENGTH = 16;
+
+    private LogDateParser()
+    {
+    }
+
+    /**
+     * 解析日志行行首的日期
+     *
+     * @param line 日志行
+     * @return 纪元日；行首不是 “yyyy-MM-dd ” 格式时返回 {@link #NO_DATE}
+     */
+    static int parseEpochDay(CharSequence line)
+    {
+        if (line.length() <= DATE_LENGTH || line.charAt(DATE_LENGTH) != ' ' || line.charAt(4) != '-' || line.charAt(7) != '-')
+            return NO_DATE;
+        int year = digit(line.charAt(0)) * 1000 + digit(line.charAt(1)) * 100 + digit(line.charAt(2)) * 10 + digit(line.charAt(3));
+        int month = digit(line.charAt(5)) * 10 + digit(line.charAt(6));
+        int day = digit(line.charAt(8)) * 10 + digit(line.charAt(9));
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * 同上，解析字节数组中从 offset 开始的一行（日期部分只含ASCII字符，与文件编码无关）
+     *
+     * @param buf 字节数组
+     * @param offset 行首位置
+     * @param end 可读取的结束位置（不包含）
+     * @return 纪元日；行首不是 “yyyy-MM-dd ” 格式时返回 {@link #NO_DATE}
+     */
+    static int parseEpochDay(byte[] buf, int offset, int end)
+    {
+        if (end - offset <= DATE_LENGTH || buf[offset + DATE_LENGTH] != ' ' || buf[offset + 4] != '-' || buf[offset + 7] != '-')
+            return NO_DATE;
+        int year = digit(buf[offset]) * 1000 + digit(buf[offset + 1]) * 100 + digit(buf[offset + 2]) * 10 + digit(buf[offset + 3]);
+        int month = digit(buf[offset + 5]) * 10 + digit(buf[offset + 6]);
+        int day = digit(buf[offset + 8]) * 10 + digit(buf[offset + 9]);
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * 解析日志行日期之后的时间，只取到分钟，秒及毫秒不影响结果
+     *
+     * @param line 日志行，行首已确认为日期
+     * @return 当天的分钟数（0~1439）；日期之后不是 “HH:mm” 格式时返回 {@link #NO_TIME}
+     */
+    static int parseMinuteOfDay(CharSequence line)
+    {
+        if (line.length() < MINUTE_LENGTH || line.charAt(13) != ':')
+            return NO_TIME;
+        int hour = digit(line.charAt(11)) * 10 + digit(line.charAt(12));
+        int minute = digit(line.charAt(14)) * 10 + digit(line.charAt(15));
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59)
+            return NO_TIME;
+        return hour * 60 + minute;
+    }
+
+    /**
+     * 同上，解析字节数组中从 offset 开始的一行
+     *
+     * @param end 可读取的结束位置（不包含）
+     */
+    static int parseMinuteOfDay(byte[] buf, int offset, int end)
+    {
+        if (end - offset < MINUTE_LENGTH || buf[offset + 13] != ':')
+            return NO_TIME;
+        int hour = digit(buf[offset + 11]) * 10 + digit(buf[offset + 12]);
+        int minute = digit(buf[offset + 14]) * 10 + digit(buf[offset + 15]);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59)
+            return NO_TIME;
+        return hour * 60 + minute;
+    }
+
+    /**
+     * 单个数字字符的值，非数字返回一个足够大的负数，使整个日期校验失败
+     */
+    private static int digit(int c)
+    {
+        int d = c - '0';
+        return d >= 0 && d <= 9 ? d : -100000;
+    }
+
+    /**
+     * 年月日转纪元日，算法同 LocalDate.toEpochDay
+     */
+    private static int toEpochDay(int year, int month, int day)
+    {
+        // 年份须为正（year-of-era），月份1~12，日1~31；日超出当月天数时按月末处理
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31)
+            return NO_DATE;
+        boolean leap = (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+        int monthLength = month == 2 ? (leap ? 29 : 28) : (month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31);
+        if (day > monthLength)
+            day = monthLength;
+
+        long y = year;
+        long total = 365 * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2)
+        {
+            total--;
+            if (!leap)
+                total--;
+        }
+        // 0000-01-01 到 1970-01-01 的天数
+        return (int) (total - 719528);
+    }
+}
@@ -0,0 +1,139 @@
+package com.idea;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * @ClassName: LogFileWalker
+ * @Description: 在后台线程中遍历日志目录，把文件名符合条件的文件依次放入有界队列。<br>
+ *      日志目录在网络共享上且包含多年的采集目录时，遍历本身就要很久；边遍历边分析，不必等遍历完成才打开第一个文件。
+ *      文件的顺序与 {@link Files#walk} 相同（深度优先、目录内按列出的顺序）。队列满时遍历线程等待，避免分析跟不上时占用过多内存。
+ * @Author: yuanbao
+ * @Date: 2025/4/11
+ **/
+final class LogFileWalker implements AutoCloseable
+{
+    // 队列中最多等待分析的文件数
+    private static final int QUEUE_CAPACITY = 1024;
+    // 表示遍历结束的标记
+    private static final Path END = Paths.get("");
+    // 等待下一个文件时检查是否已关闭的间隔
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private volatile IOException error; // 遍历出错时的异常
+    private volatile boolean closed = false; // 分析已结束，不再需要结束标记
+    private boolean finished = false; // 已取到结束标记
+    private int fileCount = 0; // 已取出的文件数
+
+    /**
+     * @param root 日志目录
+     * @param fileNameFilter 按文件名筛选需要分析的文件
+     */
+    LogFileWalker(Path root, Predicate<String> fileNameFilter)
+    {
+        this.thread = new Thread(() -> walk(root, fileNameFilter), "log-file-walker");
+        this.thread.setDaemon(true);
+    }
+
+    void start()
+    {
+        thread.start();
+    }
+
+    private void walk(Path root, Predicate<String> fileNameFilter)
+    {
+        try
+        {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+                {
+                    // 文件属性在遍历时已一并取得，不再为每个文件单独查询；只有符号链接需要再查询其指向的是否为普通文件
+                    if (fileNameFilter.test(file.getFileName().toString())
+                            && (attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(file)))
+                    {
+                        try
+                        {
+                            queue.put(file);
+                        } catch (InterruptedException e)
+                        {
+                            // 分析已结束（取消或出错），不再遍历
+                            return FileVisitResult.TERMINATE;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e)
+        {
+            error = e;
+        } finally
+        {
+            try
+            {
+                if (!closed)
+                    queue.put(END);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 等待并取出下一个文件，连同此时队列中已有的其余文件一起放入 files
+     *
+     * @return 是否还有文件；遍历结束且已全部取出，或已调用 {@link #close()} 时返回false
+     * @throws IOException 遍历日志目录出错
+     */
+    boolean takeAvailable(List<Path> files) throws IOException, InterruptedException
+    {
+        Path first = null;
+        while (first == null)
+        {
+            // 取消时由其他线程关闭，等待中的分析线程随即返回
+            if (finished || closed)
+                return false;
+            first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        files.add(first);
+        queue.drainTo(files);
+        if (files.get(files.size() - 1) == END)
+        {
+            files.remove(files.size() - 1);
+            finished = true;
+            if (error != null)
+                throw error;
+        }
+        fileCount += files.size();
+        return !files.isEmpty() || !finished;
+    }
+
+    int getFileCount()
+    {
+        return fileCount;
+    }
+
+    /**
+     * 结束遍历线程，分析取消或出错时调用；可在其他线程中调用，此后 {@link #takeAvailable} 不再等待
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        thread.interrupt();
+    }
+}
@@ -0,0 +1,151 @@
+package com.idea;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @ClassName: LogRangeSeeker
+ * @Description: 在日志文件中定位统计窗口对应的字节区间。<br>
+ *      IDEA日志按时间顺序追加，行首日期单调不减，因此可以对字节偏移做二分查找：
+ *      每次在中点附近读一小块，找到其后第一条带日期的行，与目标日期比较后缩小范围。
+ *      这样只需读取几十个小块就能跳过窗口之前的全部内容，并在窗口之后停止读取。
+ * @Author: yuanbao
+ * @Date: 2025/3/26
+ **/
+final class LogRangeSeeker
+{
+    // 每次读取的块大小
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+    private long bufferStart = -1; // 当前块在文件中的起始偏移
+    private int bufferLength = 0; // 当前块的有效字节数
+    private int lastDay; // findDatedLine 找到的行的纪元日
+
+    LogRangeSeeker(FileChannel channel) throws IOException
+    {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * 查找第一条日期不早于 targetDay 的日志行的起始偏移
+     *
+     * @param targetDay 目标纪元日
+     * @return 该行行首的偏移；不存在时返回文件大小
+     */
+    long seek(int targetDay) throws IOException
+    {
+        // 找最小的 pos，使 pos 之后第一条带日期的行不早于 targetDay（没有带日期的行视为满足）
+        long lo = 0;
+        long hi = size;
+        long found = size; // 满足条件的 hi 对应的带日期行的偏移
+        while (lo < hi)
+        {
+            long mid = (lo + hi) >>> 1;
+            long lineStart = lineStartAtOrAfter(mid);
+            // 只需在 [lineStart, hi) 内查找，再往后的第一条带日期的行就是 hi 对应的那条，必然满足条件
+            long dated = findDatedLine(lineStart, hi);
+            if (dated < 0 || lastDay >= targetDay)
+            {
+                hi = mid;
+                if (dated >= 0)
+                    found = dated;
+            } else
+            {
+                lo = dated + 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 返回 pos 所在行之后（pos 恰为行首时即 pos）的第一个行首偏移
+     */
+    private long lineStartAtOrAfter(long pos) throws IOException
+    {
+        if (pos == 0)
+            return 0;
+        long p = pos - 1;
+        while (p < size)
+        {
+            fill(p);
+            int i = (int) (p - bufferStart);
+            for (; i < bufferLength; i++)
+            {
+                if (buffer.get(i) == '\n')
+                    return bufferStart + i + 1;
+            }
+            p = bufferStart + bufferLength;
+        }
+        return size;
+    }
+
+    /**
+     * 从行首 lineStart 开始，找到第一条行首带日期且起始于 limit 之前的行
+     *
+     * @return 该行的起始偏移，其日期记在 lastDay 中；找不到时返回 -1
+     */
+    private long findDatedLine(long lineStart, long limit) throws IOException
+    {
+        long off = lineStart;
+        while (off < limit)
+        {
+            // 保证行首的日期部分在当前块内
+            if (off < bufferStart || off + LogDateParser.DATE_LENGTH + 1 > bufferStart + bufferLength)
+                fill(off);
+            int i = (int) (off - bufferStart);
+            int day = LogDateParser.parseEpochDay(buffer.array(), i, bufferLength);
+            if (day != LogDateParser.NO_DATE)
+            {
+                lastDay = day;
+                return off;
+            }
+
+            // 跳到下一行
+            long next = -1;
+            while (next < 0)
+            {
+                for (; i < bufferLength; i++)
+                {
+                    if (buffer.get(i) == '\n')
+                    {
+                        next = bufferStart + i + 1;
+                        break;
+                    }
+                }
+                if (next < 0)
+                {
+                    long blockEnd = bufferStart + bufferLength;
+                    if (blockEnd >= size || blockEnd >= limit)
+                        return -1;
+                    fill(blockEnd);
+                    i = 0;
+                }
+            }
+            off = next;
+        }
+        return -1;
+    }
+
+    /**
+     * 从 pos 开始读入一块
+     */
+    private void fill(long pos) throws IOException
+    {
+        buffer.clear();
+        int read = 0;
+        while (buffer.hasRemaining())
+        {
+            int n = channel.read(buffer, pos + read);
+            if (n < 0)
+                break;
+            read += n;
+        }
+        bufferStart = pos;
+        bufferLength = read;
+    }
+}
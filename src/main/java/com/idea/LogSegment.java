@@ -0,0 +1,271 @@
+package com.idea;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @ClassName: LogSegment
+ * @Description: 日志文件中的一段字节区间 [start, end)，作为并行分析的最小任务单位。<br>
+ *      小文件整个文件即为一段；超大文件按换行符对齐切分为多段，各段可由不同线程同时扫描，互不重叠也不遗漏任何一行。
+ *      只需分析文件的一部分时（如统计窗口对应的区间、断点之后新追加的内容），只切分和扫描这一区间。
+ * @Author: yuanbao
+ * @Date: 2025/3/21
+ **/
+class LogSegment
+{
+    // 查找换行符时每次读取的字节数
+    private static final int ALIGN_BUFFER_SIZE = 8 * 1024;
+
+    private final Path file; // 日志文件
+    private final String userName; // 文件所属用户
+    private final long start; // 起始偏移（包含），总是位于行首
+    private final long end; // 结束偏移（不包含），总是位于行首或文件末尾
+    private final int index; // 在本文件中的段序号，从0开始
+    private final int count; // 本文件的总段数
+
+    LogSegment(Path file, String userName, long start, long end, int index, int count)
+    {
+        this.file = file;
+        this.userName = userName;
+        this.start = start;
+        this.end = end;
+        this.index = index;
+        this.count = count;
+    }
+
+    Path getFile()
+    {
+        return file;
+    }
+
+    String getUserName()
+    {
+        return userName;
+    }
+
+    long getStart()
+    {
+        return start;
+    }
+
+    long getEnd()
+    {
+        return end;
+    }
+
+    /**
+     * 用于控制台输出的描述，切分过的文件附带段序号
+     */
+    String describe()
+    {
+        return count > 1 ? file.getFileName() + " [区段" + (index + 1) + "/" + count + "]" : file.getFileName().toString();
+    }
+
+    /**
+     * 将日志文件的 [start, end) 区间切分为若干段，每段约 chunkSize 字节，切分点移动到下一行的行首。
+     *
+     * @param channel 已打开的日志文件
+     * @param file 日志文件
+     * @param userName 文件所属用户
+     * @param start 区间起点，须位于行首
+     * @param end 区间终点，须位于行首或文件末尾
+     * @param chunkSize 每段的目标大小，区间不超过该大小时不切分
+     * @return 按偏移顺序排列的分段；区间为空时返回空列表
+     */
+    static List<LogSegment> split(FileChannel channel, Path file, String userName, long start, long end, long chunkSize) throws IOException
+    {
+        if (start >= end)
+            return new ArrayList<>();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        long pos = start + chunkSize;
+        while (pos < end)
+        {
+            long lineStart = nextLineStart(channel, pos, end);
+            if (lineStart >= end)
+                break;
+            bounds.add(lineStart);
+            pos = lineStart + chunkSize;
+        }
+        bounds.add(end);
+
+        List<LogSegment> segments = new ArrayList<>();
+        int count = bounds.size() - 1;
+        for (int i = 0; i < count; i++)
+        {
+            segments.add(new LogSegment(file, userName, bounds.get(i), bounds.get(i + 1), i, count));
+        }
+        return segments;
+    }
+
+    /**
+     * 从 pos 开始查找第一个换行符，返回其后一个字节的偏移；在 size 之前找不到则返回 size
+     */
+    static long nextLineStart(FileChannel channel, long pos, long size) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        while (pos < size)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++)
+            {
+                if (buffer.get(i) == '\n')
+                    return pos + i + 1;
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * 本段需要读取的字节数，与 {@link #openStream} 读出的字节数一致，用于按字节计算进度
+     */
+    long size()
+    {
+        return end - start;
+    }
+
+    /**
+     * 打开本段的按行读取器，读取的字节数计入运行指标
+     *
+     * @param readAhead 预读的请求数，为0时不预读，见 {@link #openStream}
+     * @param readBlockSize 预读每个请求的字节数
+     */
+    BufferedReader openReader(AnalysisMetrics metrics, int readAhead, int readBlockSize) throws IOException
+    {
+        // 非法的UTF-8字节以替换字符代替，不因个别乱码放弃文件的其余内容
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new BufferedReader(new InputStreamReader(openContent(metrics, readAhead, readBlockSize), decoder));
+    }
+
+    /**
+     * 打开本段的日志内容字节流（已解压），读取的字节数计入运行指标
+     *
+     * @param readAhead 预读的请求数，为0时不预读，见 {@link #openStream}
+     * @param readBlockSize 预读每个请求的字节数
+     */
+    InputStream openContent(AnalysisMetrics metrics, int readAhead, int readBlockSize) throws IOException
+    {
+        InputStream in = new CountingInputStream(openStream(readAhead, readBlockSize), metrics);
+        try
+        {
+            return decode(in);
+        } catch (IOException e)
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开本段的字节流，只读取 [start, end) 范围内的内容。
+     * 预读时同时发出 readAhead 个异步读请求，扫描与读取重叠，见 {@link ReadAheadInputStream}；否则由扫描线程逐块同步读取
+     */
+    InputStream openStream(int readAhead, int readBlockSize) throws IOException
+    {
+        if (readAhead > 0)
+            return new ReadAheadInputStream(file, start, end, readAhead, readBlockSize);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return new RangeInputStream(channel, start, end);
+    }
+
+    /**
+     * 将读出的字节流转换为日志内容，如解压；普通日志文件原样返回
+     */
+    InputStream decode(InputStream in) throws IOException
+    {
+        return in;
+    }
+
+    /**
+     * 统计读取字节数的输入流，每次批量读取后计入运行指标
+     */
+    private static class CountingInputStream extends FilterInputStream
+    {
+        private final AnalysisMetrics metrics;
+
+        CountingInputStream(InputStream in, AnalysisMetrics metrics)
+        {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = in.read();
+            if (b >= 0)
+                metrics.addBytesRead(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = in.read(b, off, len);
+            if (read > 0)
+                metrics.addBytesRead(read);
+            return read;
+        }
+    }
+
+    /**
+     * 读取文件通道中一段字节区间的输入流，关闭时一并关闭通道
+     */
+    private static class RangeInputStream extends InputStream
+    {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end)
+        {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (position >= end)
+                return -1;
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read < 0)
+                return -1;
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+}
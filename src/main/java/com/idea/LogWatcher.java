@@ -0,0 +1,506 @@
+package com.idea;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * @ClassName: LogWatcher
+ * @Description: 持续监视模式（--watch）：常驻运行，监视日志目录，随采集程序写入新文件、追加日志，实时更新统计并定期重写报告。<br>
+ *      用 {@link WatchService} 监听目录（含子目录）的新建、修改、删除事件，每个日志文件记住已读到的行首偏移，
+ *      有变化时只读取新追加的完整行，按文件、按天累计计数；文件被删除时去掉其计数。
+ *      IDEA按重命名轮转（.log → .log.1 → .log.2），同一路径下换成了另一个文件，大小却未必变小，
+ *      因此每个文件记住其标识（文件系统的 fileKey）和头部字节的CRC32，与文件变短（被截断）一样，标识变化时丢弃该路径的计数并从头读取。
+ *      有新数据时，距上次写报告满 --flush-interval 秒后重写与一次性分析相同的 txt/xlsx 报告。
+ *      没有事件时线程阻塞在 WatchService 上，空闲时基本不占CPU。
+ *      只监视普通日志文件（.log、.log.1 等），.gz 和 .zip 在此模式下忽略。
+ *      未指定分析日期时，统计窗口随当天日期滚动。
+ *      读取日志、写入报告出错（如文件被其他程序占用、网络共享暂时断开）时只记录错误，在下个周期重试，不中止监视；
+ *      只有目录监听本身失效时才停止。
+ * @Author: yuanbao
+ * @Date: 2025/4/5
+ **/
+final class LogWatcher
+{
+    // 查找换行符时每次读取的字节数
+    private static final int ALIGN_BUFFER_SIZE = 8 * 1024;
+    // 文件头部指纹所取的字节数
+    private static final int HEAD_LENGTH = 4096;
+
+    private final Path logDir;
+    private final String outputDir;
+    private final LocalDate baseDate; // 固定的分析日期，为null时取当天
+    private final List<LogAnalyzer2.AnalysisMode> modes; // 需要生成的报告
+    private final AnalysisOptions options;
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+
+    // 按路径排序，每次重写报告时用户顺序不变（一次性分析按遍历目录的顺序，两者不一定相同）
+    private final TreeMap<Path, TailedFile> files = new TreeMap<>();
+    // 读取出错、下个周期重试的文件
+    private final Set<Path> retryFiles = new HashSet<>();
+    // 遍历目录出错，下个周期重新检查全部文件
+    private boolean rescanPending = false;
+    private volatile boolean running = true;
+    private WatchService watchService;
+
+    LogWatcher(String logDir, String outputDir, LocalDate baseDate, List<LogAnalyzer2.AnalysisMode> modes, AnalysisOptions options)
+    {
+        this.logDir = Paths.get(logDir);
+        this.outputDir = outputDir;
+        this.baseDate = baseDate;
+        this.modes = modes;
+        this.options = options;
+    }
+
+    /**
+     * 持续监视，直到调用 {@link #stop()} 或线程被中断
+     */
+    void run() throws IOException
+    {
+        if (!Files.isDirectory(logDir))
+        {
+            System.err.println("错误：日志目录不存在。请检查日志目录：" + logDir);
+            throw new RuntimeException("错误：日志目录不存在。请检查日志目录：" + logDir);
+        }
+        if (options.getHistogramMinutes() > 0)
+            System.err.println("持续监视模式不统计时段，忽略 --histogram");
+        metrics.register();
+        metrics.startPhase(AnalysisMetrics.Phase.SCAN);
+        try (WatchService service = FileSystems.getDefault().newWatchService())
+        {
+            watchService = service;
+            // 先注册再读取已有文件，读取期间的变化不会遗漏
+            registerTree(logDir);
+            rescanAll();
+            boolean dirty = !flush();
+            System.out.println("正在监视日志目录：" + logDir.toAbsolutePath() + "，每 " + options.getFlushInterval() + " 秒内有新日志时更新报告");
+
+            long flushIntervalNanos = TimeUnit.SECONDS.toNanos(options.getFlushInterval());
+            long lastFlush = System.nanoTime();
+            while (running)
+            {
+                WatchKey key;
+                if (dirty)
+                {
+                    long wait = lastFlush + flushIntervalNanos - System.nanoTime();
+                    key = wait > 0 ? service.poll(wait, TimeUnit.NANOSECONDS) : service.poll();
+                } else if (rescanPending || !retryFiles.isEmpty())
+                {
+                    // 有读取出错的文件时，最多等一个周期后重试
+                    key = service.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                } else
+                {
+                    // 没有待写入的数据时一直阻塞等待事件
+                    key = service.take();
+                }
+
+                // 上次读取出错的文件一并重新读取
+                Set<Path> changed = new HashSet<>(retryFiles);
+                retryFiles.clear();
+                boolean overflow = rescanPending;
+                rescanPending = false;
+                while (key != null)
+                {
+                    overflow |= collectChanges(key, changed);
+                    key = service.poll();
+                }
+                if (overflow)
+                {
+                    // 事件过多被丢弃时，重新检查全部文件
+                    dirty |= rescanAll();
+                } else
+                {
+                    for (Path file : changed)
+                    {
+                        dirty |= update(file);
+                    }
+                }
+
+                if (dirty && System.nanoTime() - lastFlush >= flushIntervalNanos)
+                {
+                    // 写入失败时保留 dirty，下个周期重写
+                    dirty = !flush();
+                    lastFlush = System.nanoTime();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e)
+        {
+            System.out.println("已停止监视日志目录：" + logDir.toAbsolutePath());
+            Thread.currentThread().interrupt();
+        } finally
+        {
+            metrics.startPhase(AnalysisMetrics.Phase.IDLE);
+        }
+    }
+
+    /**
+     * 停止监视，正在等待事件的 {@link #run()} 随即返回
+     */
+    void stop() throws IOException
+    {
+        running = false;
+        if (watchService != null)
+            watchService.close();
+    }
+
+    /**
+     * 注册目录及其全部子目录
+     */
+    private void registerTree(Path dir) throws IOException
+    {
+        try (Stream<Path> dirs = Files.walk(dir))
+        {
+            for (Path sub : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator)
+            {
+                sub.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    /**
+     * 取出一个目录的全部事件，记录发生变化的日志文件；新建的子目录注册监听并读取其中已有的文件
+     *
+     * @return 是否有事件因过多而被丢弃
+     */
+    private boolean collectChanges(WatchKey key, Set<Path> changed)
+    {
+        boolean overflow = false;
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+            {
+                try
+                {
+                    registerTree(path);
+                } catch (IOException | UncheckedIOException e)
+                {
+                    // 子目录可能随即被删除或暂时无法访问，重新检查时再读取其中的文件
+                    System.err.println("监听子目录出错：" + path + " " + e);
+                }
+                // 注册之前已写入子目录的文件没有事件，统一重新检查
+                overflow = true;
+            } else if (isLogFile(path) || files.containsKey(path))
+            {
+                changed.add(path);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private static boolean isLogFile(Path path)
+    {
+        return LogAnalyzer2.LOG_FILE_PATTERN.matcher(path.getFileName().toString()).matches() && !ArchiveEntrySegment.isArchive(path);
+    }
+
+    /**
+     * 检查目录下的全部日志文件，去掉已删除的文件；遍历出错时保留已有的计数，下个周期重新检查
+     *
+     * @return 是否有计数变化
+     */
+    private boolean rescanAll()
+    {
+        boolean changed = false;
+        Set<Path> existing = new HashSet<>();
+        try (Stream<Path> paths = Files.walk(logDir))
+        {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile).filter(LogWatcher::isLogFile)::iterator)
+            {
+                existing.add(path);
+                changed |= update(path);
+            }
+        } catch (IOException | UncheckedIOException e)
+        {
+            System.err.println("遍历日志目录出错，下个周期重试：" + e);
+            rescanPending = true;
+            return changed;
+        }
+        for (Iterator<Path> it = files.keySet().iterator(); it.hasNext(); )
+        {
+            if (!existing.contains(it.next()))
+            {
+                it.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 读取文件新追加的完整行并累计；读取出错时记录错误，下个周期重试
+     *
+     * @return 是否有计数变化
+     */
+    private boolean update(Path path)
+    {
+        if (!Files.isRegularFile(path))
+            return files.remove(path) != null;
+
+        AnalysisWindow window = AnalysisWindow.covering(currentWindows());
+        TailedFile tailed = files.get(path);
+        boolean changed = false;
+        if (tailed == null)
+        {
+            tailed = new TailedFile(LogAnalyzer2.extractRealName(path.getFileName().toString()));
+            files.put(path, tailed);
+            changed = true;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            if (tailed.seeked && (size < tailed.offset || !tailed.isSameFile(fileKey, channel)))
+            {
+                System.out.println("日志文件已截断或轮转，重新读取：" + path.getFileName());
+                tailed.days.clear();
+                tailed.offset = 0;
+                tailed.seeked = false;
+                changed = true;
+            }
+            tailed.identify(fileKey, channel);
+            if (!tailed.seeked)
+            {
+                // 首次读取时跳过窗口之前的内容
+                if (options.isSeek())
+                    tailed.offset = new LogRangeSeeker(channel).seek(window.getFirstDay());
+                tailed.seeked = true;
+            }
+            // 只读到最后一个换行符，未写完的行留到下次
+            long end = lastLineEnd(channel, tailed.offset, size);
+            if (end <= tailed.offset)
+                return changed;
+
+            Set<Path> failedFiles = ConcurrentHashMap.newKeySet();
+            long[] newDays = LogAnalyzer2.scanSegment(new LogSegment(path, tailed.userName, tailed.offset, end, 0, 1), window, options.getRules().newCounter(), options,
+                    failedFiles, metrics);
+            if (!failedFiles.isEmpty())
+            {
+                retryFiles.add(path);
+                return changed;
+            }
+            tailed.add(newDays, window);
+            tailed.offset = end;
+            return true;
+        } catch (NoSuchFileException e)
+        {
+            // 读取前文件已被删除
+            return files.remove(path) != null;
+        } catch (IOException e)
+        {
+            // 如文件被采集程序独占打开，已读到的偏移不变，下次从同一位置继续
+            System.err.println("读取日志文件出错，下个周期重试：" + path + " " + e);
+            retryFiles.add(path);
+            return changed;
+        }
+    }
+
+    /**
+     * 按当前窗口汇总各文件的计数，重写各统计模式的txt和xlsx报告
+     *
+     * @return 是否全部写入成功；失败时（如报告正被Excel打开）记录错误，由调用方下个周期重写
+     */
+    private boolean flush()
+    {
+        List<AnalysisWindow> windows = currentWindows();
+        metrics.startPhase(AnalysisMetrics.Phase.REPORT);
+        int firstDay = AnalysisWindow.covering(windows).getFirstDay();
+        for (TailedFile tailed : files.values())
+        {
+            // 窗口之前的天以后不会再用到
+            tailed.days.headMap(firstDay).clear();
+        }
+        try
+        {
+            for (AnalysisWindow window : windows)
+            {
+                StatsCube stats = new StatsCube(window.bucketCount());
+                for (TailedFile tailed : files.values())
+                {
+                    stats.addUserDays(stats.internUser(tailed.userName), tailed.windowDays(window), window);
+                }
+                LogAnalyzer2.generateReport(stats, outputDir, window, options.getRules());
+                if (options.isExcel())
+                    LogAnalyzer2.generateExcelReport(stats, outputDir, window, options.getRules());
+            }
+        } catch (IOException | RuntimeException e)
+        {
+            // 写入Excel出错时 generateExcelReport 抛出 RuntimeException
+            System.err.println("写入报告出错，下个周期重试：" + e);
+            return false;
+        } finally
+        {
+            metrics.startPhase(AnalysisMetrics.Phase.SCAN);
+        }
+        System.out.println("报告已更新：" + LocalTime.now().withNano(0));
+        return true;
+    }
+
+    /**
+     * 各报告当前的统计窗口，未指定分析日期时随当天日期滚动
+     */
+    private List<AnalysisWindow> currentWindows()
+    {
+        List<AnalysisWindow> windows = new ArrayList<>();
+        for (LogAnalyzer2.AnalysisMode mode : modes)
+        {
+            windows.add(new AnalysisWindow(baseDate != null ? baseDate : LocalDate.now(), mode));
+        }
+        return windows;
+    }
+
+    /**
+     * [from, size) 中最后一个换行符之后的偏移，没有换行符时返回 from
+     */
+    private static long lastLineEnd(FileChannel channel, long from, long size) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        long blockEnd = size;
+        while (blockEnd > from)
+        {
+            long blockStart = Math.max(from, blockEnd - ALIGN_BUFFER_SIZE);
+            buffer.clear();
+            buffer.limit((int) (blockEnd - blockStart));
+            int read = 0;
+            while (buffer.hasRemaining())
+            {
+                int n = channel.read(buffer, blockStart + read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+            for (int i = read - 1; i >= 0; i--)
+            {
+                if (buffer.get(i) == '\n')
+                    return blockStart + i + 1;
+            }
+            blockEnd = blockStart;
+        }
+        return from;
+    }
+
+    /**
+     * 文件前 length 个字节的CRC32
+     */
+    private static long headHash(FileChannel channel, long length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, buffer.position()) < 0)
+                break;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        return crc.getValue();
+    }
+
+    /**
+     * 一个被监视的日志文件：已读到的偏移，以及已读部分按天的计数
+     */
+    private static class TailedFile
+    {
+        final String userName;
+        long offset; // 已读到的偏移，总是位于行首
+        boolean seeked; // 是否已跳过窗口之前的内容
+        private Object fileKey; // 文件系统中的文件标识，不支持时为null
+        private long headLength; // 指纹所取的头部字节数
+        private long headHash; // 头部字节的CRC32
+        final TreeMap<Integer, long[]> days = new TreeMap<>(); // 纪元日 -> 各指标计数
+
+        TailedFile(String userName)
+        {
+            this.userName = userName;
+        }
+
+        /**
+         * 当前路径下是否仍是上次读取的文件：文件标识相同，且头部字节未变
+         */
+        boolean isSameFile(Object fileKey, FileChannel channel) throws IOException
+        {
+            if (this.fileKey != null && !this.fileKey.equals(fileKey))
+                return false;
+            return channel.size() >= headLength && headHash(channel, headLength) == headHash;
+        }
+
+        /**
+         * 记录文件的标识和头部指纹；文件不足 HEAD_LENGTH 时随追加写入扩大指纹范围
+         */
+        void identify(Object fileKey, FileChannel channel) throws IOException
+        {
+            this.fileKey = fileKey;
+            long length = Math.min(channel.size(), HEAD_LENGTH);
+            if (length > headLength || !seeked)
+            {
+                headLength = length;
+                headHash = headHash(channel, length);
+            }
+        }
+
+        /**
+         * 累计以天为单位的计数（下标相对窗口第一天）
+         */
+        void add(long[] newDays, AnalysisWindow window)
+        {
+            for (int d = 0; d < window.dayCount(); d++)
+            {
+                int base = StatsCube.index(d, 0);
+                long[] counts = null;
+                for (int m = 0; m < StatsCube.METRIC_COUNT; m++)
+                {
+                    if (newDays[base + m] == 0)
+                        continue;
+                    if (counts == null)
+                        counts = days.computeIfAbsent(window.getFirstDay() + d, k -> new long[StatsCube.METRIC_COUNT]);
+                    counts[m] += newDays[base + m];
+                }
+            }
+        }
+
+        /**
+         * 窗口内的计数，按 {@link StatsCube#index} 的布局以天为单位展开
+         */
+        long[] windowDays(AnalysisWindow window)
+        {
+            long[] result = new long[StatsCube.sliceLength(window.dayCount())];
+            for (Map.Entry<Integer, long[]> day : days.subMap(window.getFirstDay(), true, window.getLastDay(), true).entrySet())
+            {
+                System.arraycopy(day.getValue(), 0, result, StatsCube.index(day.getKey() - window.getFirstDay(), 0), StatsCube.METRIC_COUNT);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.idea;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @ClassName: MultiPatternMatcher
+ * @Description: 多关键字匹配器（Aho-Corasick 自动机）。<br>
+ *      把所有关键字编译成一个确定性自动机，只需对日志行扫描一遍即可找出其中出现的全部关键字，
+ *      每个字符的处理代价与关键字个数无关，新增关键字不会拖慢逐行统计。
+ *      匹配结果以位掩码返回，第 i 位为1表示第 i 个关键字出现过，因此最多支持64个关键字。
+ *      也可直接在未解码的字节上匹配（{@link #forUtf8Bytes}）：关键字按UTF-8编码为字节序列后建自动机，
+ *      UTF-8中多字节字符的各字节都不会与ASCII字节或其他字符的开头混淆，字节上出现即等同于解码后的文本中出现。
+ *      日志行的大部分字符不是任何关键字的开头，自动机处于初始状态时直接跳过这些字符，每个字符只查一次表、前后没有依赖，
+ *      只有遇到关键字的首字符后才逐个字符转移状态。
+ * @Author: yuanbao
+ * @Date: 2025/3/24
+ **/
+final class MultiPatternMatcher
+{
+    // 位掩码最多容纳的关键字个数
+    static final int MAX_PATTERNS = 64;
+
+    private final String[] patterns;
+    // 字符 -> 字符类别，未在任何关键字中出现的字符都归为类别0
+    private final char[] charClass = new char[Character.MAX_VALUE + 1];
+    // 关键字首字符的类别从此编号开始：在初始状态时小于它的字符都回到初始状态，可以直接跳过
+    private final int firstCharClass;
+    // 每个状态的转移表宽度，即字符类别数
+    private final int width;
+    // 稠密转移表：状态 * width + 字符类别 -> 下一状态 * width。下一状态有输出时存为取反后的负数，扫描时省去乘法和多数输出查表
+    private final int[] transitions;
+    // 到达每个状态时已匹配到的关键字位掩码（已合并失败链上的输出），同样按 状态 * width 下标存放
+    private final long[] outputs;
+
+    MultiPatternMatcher(String... patterns)
+    {
+        this(patterns, patterns);
+    }
+
+    /**
+     * @param patterns 关键字
+     * @param matchPatterns 实际建自动机的字符序列，与 patterns 一一对应
+     */
+    private MultiPatternMatcher(String[] patterns, String[] matchPatterns)
+    {
+        if (patterns.length > MAX_PATTERNS)
+        {
+            System.err.println("关键字个数超过上限" + MAX_PATTERNS + "。当前为：" + patterns.length);
+            throw new RuntimeException("关键字个数超过上限" + MAX_PATTERNS + "。当前为：" + patterns.length);
+        }
+        this.patterns = patterns.clone();
+
+        // 1. 为关键字中出现的字符分配类别编号，关键字的首字符排在最后
+        int classes = 1;
+        for (String pattern : matchPatterns)
+        {
+            if (pattern.isEmpty())
+            {
+                System.err.println("关键字不能为空");
+                throw new RuntimeException("关键字不能为空");
+            }
+            for (int i = 1; i < pattern.length(); i++)
+            {
+                char c = pattern.charAt(i);
+                if (charClass[c] == 0 && !isFirstChar(c, matchPatterns))
+                    charClass[c] = (char) classes++;
+            }
+        }
+        this.firstCharClass = classes;
+        for (String pattern : matchPatterns)
+        {
+            if (charClass[pattern.charAt(0)] == 0)
+                charClass[pattern.charAt(0)] = (char) classes++;
+        }
+        this.width = classes;
+
+        // 2. 构建字典树，-1 表示尚无转移
+        List<int[]> trie = new ArrayList<>();
+        List<Long> trieOutputs = new ArrayList<>();
+        trie.add(newState(width));
+        trieOutputs.add(0L);
+        for (int p = 0; p < matchPatterns.length; p++)
+        {
+            int state = 0;
+            for (int i = 0; i < matchPatterns[p].length(); i++)
+            {
+                int cls = charClass[matchPatterns[p].charAt(i)];
+                if (trie.get(state)[cls] < 0)
+                {
+                    trie.get(state)[cls] = trie.size();
+                    trie.add(newState(width));
+                    trieOutputs.add(0L);
+                }
+                state = trie.get(state)[cls];
+            }
+            trieOutputs.set(state, trieOutputs.get(state) | (1L << p));
+        }
+
+        // 3. 按层次遍历计算失败转移，并直接填成稠密转移表
+        int states = trie.size();
+        int[] transitions = new int[states * width];
+        long[] outputs = new long[states];
+        int[] fail = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int cls = 0; cls < width; cls++)
+        {
+            int next = trie.get(0)[cls];
+            if (next < 0)
+            {
+                transitions[cls] = 0;
+            } else
+            {
+                transitions[cls] = next;
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        outputs[0] = trieOutputs.get(0);
+        while (!queue.isEmpty())
+        {
+            int state = queue.poll();
+            outputs[state] = trieOutputs.get(state) | outputs[fail[state]];
+            for (int cls = 0; cls < width; cls++)
+            {
+                int next = trie.get(state)[cls];
+                if (next < 0)
+                {
+                    transitions[state * width + cls] = transitions[fail[state] * width + cls];
+                } else
+                {
+                    transitions[state * width + cls] = next;
+                    fail[next] = transitions[fail[state] * width + cls];
+                    queue.add(next);
+                }
+            }
+        }
+
+        // 4. 转移目标改为 状态 * width，有输出的目标取反，输出表也按同样的下标存放
+        this.outputs = new long[states * width];
+        for (int state = 0; state < states; state++)
+        {
+            this.outputs[state * width] = outputs[state];
+        }
+        for (int i = 0; i < transitions.length; i++)
+        {
+            int next = transitions[i];
+            transitions[i] = outputs[next] != 0 ? ~(next * width) : next * width;
+        }
+        this.transitions = transitions;
+    }
+
+    /**
+     * 在UTF-8字节上匹配的自动机，用 {@link #match(byte[], int, int)} 扫描；{@link #pattern} 仍返回原关键字
+     */
+    static MultiPatternMatcher forUtf8Bytes(String... patterns)
+    {
+        // 每个字节作为一个 0~255 的字符参与建表
+        String[] bytePatterns = new String[patterns.length];
+        for (int i = 0; i < patterns.length; i++)
+        {
+            bytePatterns[i] = new String(patterns[i].getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        }
+        return new MultiPatternMatcher(patterns, bytePatterns);
+    }
+
+    private static boolean isFirstChar(char c, String[] patterns)
+    {
+        for (String pattern : patterns)
+        {
+            if (pattern.charAt(0) == c)
+                return true;
+        }
+        return false;
+    }
+
+    private static int[] newState(int width)
+    {
+        int[] state = new int[width];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    /**
+     * 关键字个数
+     */
+    int size()
+    {
+        return patterns.length;
+    }
+
+    /**
+     * 第 i 个关键字
+     */
+    String pattern(int i)
+    {
+        return patterns[i];
+    }
+
+    /**
+     * 扫描整行，返回出现过的关键字位掩码
+     *
+     * @param text 日志行
+     * @return 第 i 位为1表示第 i 个关键字出现过
+     */
+    long match(CharSequence text)
+    {
+        int[] transitions = this.transitions;
+        char[] charClass = this.charClass;
+        int firstCharClass = this.firstCharClass;
+        int state = 0;
+        long found = 0L;
+        for (int i = 0, n = text.length(); i < n; i++)
+        {
+            if (state == 0)
+            {
+                // 跳过不是关键字开头的字符
+                while (i < n && charClass[text.charAt(i)] < firstCharClass)
+                {
+                    i++;
+                }
+                if (i == n)
+                    break;
+            }
+            state = transitions[state + charClass[text.charAt(i)]];
+            if (state < 0)
+            {
+                state = ~state;
+                found |= outputs[state];
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 扫描字节数组中的一行，自动机须由 {@link #forUtf8Bytes} 创建
+     *
+     * @param buf 字节数组
+     * @param from 行首位置
+     * @param to 行尾位置（不包含）
+     * @return 第 i 位为1表示第 i 个关键字出现过
+     */
+    long match(byte[] buf, int from, int to)
+    {
+        int[] transitions = this.transitions;
+        char[] charClass = this.charClass;
+        int firstCharClass = this.firstCharClass;
+        int state = 0;
+        long found = 0L;
+        for (int i = from; i < to; i++)
+        {
+            if (state == 0)
+            {
+                // 跳过不是关键字开头的字符
+                while (i < to && charClass[buf[i] & 0xFF] < firstCharClass)
+                {
+                    i++;
+                }
+                if (i == to)
+                    break;
+            }
+            state = transitions[state + charClass[buf[i] & 0xFF]];
+            if (state < 0)
+            {
+                state = ~state;
+                found |= outputs[state];
+            }
+        }
+        return found;
+    }
+}
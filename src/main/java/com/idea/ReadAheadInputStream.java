@@ -0,0 +1,168 @@
+package com.idea;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * @ClassName: ReadAheadInputStream
+ * @Description: 预读的输入流：以异步文件通道对 [start, end) 区间同时发出多个按块的读请求，扫描线程处理当前块时后续各块已在读取。<br>
+ *      日志在网络共享上时，每次读请求的往返延迟远大于传输时间，同步逐块读取时扫描线程大部分时间在等待；
+ *      同时保持 depth 个请求在途，延迟相互重叠，读取速度接近网络带宽。
+ *      每块读完即交给扫描线程，其缓冲区随即用于下一个读请求，因此内存占用固定为 depth 块，与文件大小无关。
+ * @Author: yuanbao
+ * @Date: 2025/4/14
+ **/
+final class ReadAheadInputStream extends InputStream
+{
+    private final AsynchronousFileChannel channel;
+    private final long end;
+    private final Queue<Block> pending = new ArrayDeque<>(); // 在途的读请求，按偏移顺序
+    private long nextRequest; // 下一个读请求的起始偏移
+    private Block current; // 正在读出的块
+
+    /**
+     * @param file 日志文件
+     * @param start 起始偏移（包含）
+     * @param end 结束偏移（不包含）
+     * @param depth 同时在途的读请求数
+     * @param blockSize 每个读请求的字节数
+     */
+    ReadAheadInputStream(Path file, long start, long end, int depth, int blockSize) throws IOException
+    {
+        this.channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ);
+        this.end = end;
+        this.nextRequest = start;
+        // 区间较小时按实际需要分配，不为小文件占用整块
+        int size = (int) Math.min(blockSize, Math.max(1, end - start));
+        for (int i = 0; i < depth && nextRequest < end; i++)
+        {
+            request(new Block(ByteBuffer.allocate(size)));
+        }
+    }
+
+    /**
+     * 用该块的缓冲区读取 nextRequest 开始的下一块
+     */
+    private void request(Block block)
+    {
+        block.buffer.clear();
+        block.buffer.limit((int) Math.min(block.buffer.capacity(), end - nextRequest));
+        block.position = nextRequest;
+        block.future = channel.read(block.buffer, nextRequest);
+        nextRequest += block.buffer.limit();
+        pending.add(block);
+    }
+
+    /**
+     * 当前块已读完时等待下一块
+     *
+     * @return 是否还有内容
+     */
+    private boolean advance() throws IOException
+    {
+        if (current != null && current.buffer.hasRemaining())
+            return true;
+        if (current != null)
+        {
+            // 缓冲区交回，继续预读后面的内容
+            Block done = current;
+            current = null;
+            if (nextRequest < end)
+                request(done);
+        }
+        Block block = pending.poll();
+        if (block == null)
+            return false;
+        block.await(channel);
+        block.buffer.flip();
+        current = block;
+        if (block.buffer.hasRemaining())
+            return true;
+        // 文件已被截断，其后的请求不再有内容
+        pending.clear();
+        nextRequest = end;
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!advance())
+            return -1;
+        return current.buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        if (!advance())
+            return -1;
+        int n = Math.min(len, current.buffer.remaining());
+        current.buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available()
+    {
+        return current == null ? 0 : current.buffer.remaining();
+    }
+
+    /**
+     * 关闭通道，尚在途的读请求随之中止
+     */
+    @Override
+    public void close() throws IOException
+    {
+        pending.clear();
+        current = null;
+        channel.close();
+    }
+
+    /**
+     * 一个读请求：缓冲区、起始偏移和尚未完成的结果
+     */
+    private static final class Block
+    {
+        final ByteBuffer buffer;
+        long position;
+        Future<Integer> future;
+
+        Block(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        /**
+         * 等待读请求完成；异步读取可能只读到一部分，剩余部分继续读完，文件在此期间被截断时到文件末尾为止
+         */
+        void await(AsynchronousFileChannel channel) throws IOException
+        {
+            try
+            {
+                while (future.get() >= 0 && buffer.hasRemaining())
+                {
+                    future = channel.read(buffer, position + buffer.position());
+                }
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("读取日志文件被中断");
+            } catch (ExecutionException e)
+            {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.idea;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @ClassName: RollupStore
+ * @Description: 按天汇总的统计数据，保存在输出目录的 analysis_rollup 目录下，每月一个二进制文件（如 2025-03.bin）。<br>
+ *      每个文件记录当月已分析过的天，以及每个用户每天各指标的计数（只存有计数的天）。
+ *      分析日志时（--rollup）用本次扫描得到的按天结果覆盖所涉及的天；之后的报告（--from-rollup）直接由这些文件汇总，
+ *      不再读取任何日志文件。同一天以最近一次分析的结果为准；识别规则变化后原有的汇总作废，需重新分析日志生成。
+ *      只记录已经过完的天（昨天及以前）：当天还在写入日志，之后的天还没有日志，记为已分析会使 --from-rollup 得到不完整的计数而不报错。
+ * @Author: yuanbao
+ * @Date: 2025/4/8
+ **/
+final class RollupStore
+{
+    // 汇总数据所在的目录名
+    static final String DIR_NAME = "analysis_rollup";
+    // 文件头标识及格式版本
+    private static final int MAGIC = 0x4C415255; // "LARU"
+    private static final int VERSION = 1;
+
+    private final Path dir;
+    private final EventRules rules;
+
+    RollupStore(String outputDir, EventRules rules)
+    {
+        this.dir = Paths.get(outputDir, DIR_NAME);
+        this.rules = rules;
+    }
+
+    /**
+     * 写入一次扫描的按天结果，覆盖其中已过完的各天原有的记录
+     *
+     * @param days 用户 × 天 × 指标 的计数，统计单元为 dayWindow 中的每一天
+     * @param dayWindow 扫描范围，每天一个统计单元
+     */
+    void write(StatsCube days, AnalysisWindow dayWindow) throws IOException
+    {
+        LocalDate first = LocalDate.ofEpochDay(dayWindow.getFirstDay());
+        LocalDate last = LocalDate.ofEpochDay(Math.min(dayWindow.getLastDay(), LocalDate.now().minusDays(1).toEpochDay()));
+        if (last.isBefore(first))
+        {
+            System.out.println("扫描范围内没有已过完的天，不写入按天汇总");
+            return;
+        }
+        Files.createDirectories(dir);
+        for (YearMonth month = YearMonth.from(first); !month.isAfter(YearMonth.from(last)); month = month.plusMonths(1))
+        {
+            MonthRollup rollup = read(month);
+            if (rollup == null)
+                rollup = new MonthRollup(month);
+            int from = Math.max(dayWindow.getFirstDay(), (int) month.atDay(1).toEpochDay());
+            int to = Math.min((int) last.toEpochDay(), (int) month.atEndOfMonth().toEpochDay());
+            rollup.replace(days, dayWindow, from, to);
+            save(rollup);
+        }
+    }
+
+    /**
+     * 由汇总数据得到统计窗口的计数，用户按各月文件中首次出现的顺序排列
+     *
+     * @return 计数；窗口内有未分析过的天时抛出异常并列出这些天
+     */
+    StatsCube query(AnalysisWindow window) throws IOException
+    {
+        Map<String, long[]> userDays = new LinkedHashMap<>();
+        List<LocalDate> missing = new ArrayList<>();
+        LocalDate first = LocalDate.ofEpochDay(window.getFirstDay());
+        LocalDate last = LocalDate.ofEpochDay(window.getLastDay());
+        for (YearMonth month = YearMonth.from(first); !month.isAfter(YearMonth.from(last)); month = month.plusMonths(1))
+        {
+            MonthRollup rollup = read(month);
+            int monthStart = (int) month.atDay(1).toEpochDay();
+            int from = Math.max(window.getFirstDay(), monthStart);
+            int to = Math.min(window.getLastDay(), (int) month.atEndOfMonth().toEpochDay());
+            for (int day = from; day <= to; day++)
+            {
+                if (rollup == null || !rollup.covered[day - monthStart])
+                    missing.add(LocalDate.ofEpochDay(day));
+            }
+            if (rollup == null)
+                continue;
+            for (Map.Entry<String, long[]> user : rollup.users.entrySet())
+            {
+                long[] days = userDays.computeIfAbsent(user.getKey(), k -> new long[StatsCube.sliceLength(window.dayCount())]);
+                System.arraycopy(user.getValue(), StatsCube.index(from - monthStart, 0), days, StatsCube.index(from - window.getFirstDay(), 0),
+                        StatsCube.sliceLength(to - from + 1));
+            }
+        }
+        if (!missing.isEmpty())
+        {
+            String message = "汇总数据中缺少 " + missing.size() + " 天（" + missing.get(0) + " 至 " + missing.get(missing.size() - 1)
+                    + " 之间），请先以 --rollup 分析这些日期的日志：" + dir;
+            System.err.println(message);
+            throw new RuntimeException(message);
+        }
+
+        StatsCube stats = new StatsCube(window.bucketCount());
+        for (Map.Entry<String, long[]> user : userDays.entrySet())
+        {
+            stats.addUserDays(stats.internUser(user.getKey()), user.getValue(), window);
+        }
+        return stats;
+    }
+
+    private Path fileOf(YearMonth month)
+    {
+        return dir.resolve(month + ".bin");
+    }
+
+    /**
+     * 读取一个月的汇总，不存在、格式不符或识别规则已变化时返回null
+     */
+    private MonthRollup read(YearMonth month) throws IOException
+    {
+        Path file = fileOf(month);
+        if (!Files.exists(file))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != StatsCube.METRIC_COUNT
+                    || !rules.fingerprint().equals(in.readUTF()))
+            {
+                System.out.println("汇总数据格式或识别规则已变化，忽略：" + file);
+                return null;
+            }
+            MonthRollup rollup = new MonthRollup(month);
+            int coveredMask = in.readInt();
+            for (int d = 0; d < rollup.covered.length; d++)
+            {
+                rollup.covered[d] = (coveredMask & (1 << d)) != 0;
+            }
+            int userCount = in.readInt();
+            for (int u = 0; u < userCount; u++)
+            {
+                long[] days = rollup.user(in.readUTF());
+                int dayCount = in.readUnsignedByte();
+                for (int i = 0; i < dayCount; i++)
+                {
+                    int base = StatsCube.index(in.readUnsignedByte(), 0);
+                    for (int m = 0; m < StatsCube.METRIC_COUNT; m++)
+                    {
+                        days[base + m] = in.readLong();
+                    }
+                }
+            }
+            return rollup;
+        }
+    }
+
+    /**
+     * 写回一个月的汇总，先写临时文件再替换
+     */
+    private void save(MonthRollup rollup) throws IOException
+    {
+        Path file = fileOf(rollup.month);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(StatsCube.METRIC_COUNT);
+            out.writeUTF(rules.fingerprint());
+            int coveredMask = 0;
+            for (int d = 0; d < rollup.covered.length; d++)
+            {
+                if (rollup.covered[d])
+                    coveredMask |= 1 << d;
+            }
+            out.writeInt(coveredMask);
+            out.writeInt(rollup.users.size());
+            for (Map.Entry<String, long[]> user : rollup.users.entrySet())
+            {
+                out.writeUTF(user.getKey());
+                long[] days = user.getValue();
+                // 只写有计数的天
+                List<Integer> nonEmpty = new ArrayList<>();
+                for (int d = 0; d < rollup.covered.length; d++)
+                {
+                    if (!isEmpty(days, d))
+                        nonEmpty.add(d);
+                }
+                out.writeByte(nonEmpty.size());
+                for (int d : nonEmpty)
+                {
+                    out.writeByte(d);
+                    for (int m = 0; m < StatsCube.METRIC_COUNT; m++)
+                    {
+                        out.writeLong(days[StatsCube.index(d, m)]);
+                    }
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean isEmpty(long[] days, int day)
+    {
+        for (int m = 0; m < StatsCube.METRIC_COUNT; m++)
+        {
+            if (days[StatsCube.index(day, m)] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 一个月的汇总：已分析过的天，以及每个用户当月每天的计数
+     */
+    private static class MonthRollup
+    {
+        final YearMonth month;
+        final boolean[] covered; // 下标为当月第几天 - 1
+        final Map<String, long[]> users = new LinkedHashMap<>(); // 用户 -> 天 × 指标 的计数
+
+        MonthRollup(YearMonth month)
+        {
+            this.month = month;
+            this.covered = new boolean[month.lengthOfMonth()];
+        }
+
+        long[] user(String userName)
+        {
+            return users.computeIfAbsent(userName, k -> new long[StatsCube.sliceLength(covered.length)]);
+        }
+
+        /**
+         * 用扫描结果覆盖 [from, to] 中的各天，本次没有出现的用户这些天计为0
+         */
+        void replace(StatsCube days, AnalysisWindow dayWindow, int from, int to)
+        {
+            int monthStart = (int) month.atDay(1).toEpochDay();
+            for (long[] counts : users.values())
+            {
+                for (int i = StatsCube.index(from - monthStart, 0); i < StatsCube.index(to - monthStart + 1, 0); i++)
+                {
+                    counts[i] = 0;
+                }
+            }
+            for (int u = 0; u < days.userCount(); u++)
+            {
+                long[] counts = user(days.userName(u));
+                for (int day = from; day <= to; day++)
+                {
+                    for (StatsCube.Metric metric : StatsCube.Metric.values())
+                    {
+                        counts[StatsCube.index(day - monthStart, metric)] = days.get(u, dayWindow.bucketOf(day), metric);
+                    }
+                }
+            }
+            for (int day = from; day <= to; day++)
+            {
+                covered[day - monthStart] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.idea;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @ClassName: SegmentScheduler
+ * @Description: 按大小从大到小调度日志分段的扫描任务。<br>
+ *      边遍历边分析时每批往往只找到一两个文件，若一找到就提交，只能在同一批内排序，大文件可能在最后才开始，
+ *      最后只剩它一个还在扫描。这里同时交给线程池的任务不超过 slots 个，其余留在按大小排序的等待队列中，
+ *      每完成一个任务就从等待的段中取最大的一个开始，排序范围跨越各批：线程池忙时后找到的大段也能排到先找到的小段前面。
+ * @Author: yuanbao
+ * @Date: 2025/4/21
+ **/
+final class SegmentScheduler
+{
+    private final Executor executor;
+    private final int slots;
+    private final PriorityQueue<Pending<?>> waiting = new PriorityQueue<>(
+            (a, b) -> a.size != b.size ? Long.compare(b.size, a.size) : Long.compare(a.sequence, b.sequence));
+    private final Set<Pending<?>> running = new HashSet<>(); // 已交给线程池、尚未完成的任务
+    private long sequence = 0; // 大小相同时按加入的顺序
+
+    /**
+     * @param executor 执行扫描任务的线程池
+     * @param slots 同时交给线程池的任务数，一般为线程池的并行度
+     */
+    SegmentScheduler(Executor executor, int slots)
+    {
+        this.executor = executor;
+        this.slots = Math.max(1, slots);
+    }
+
+    /**
+     * 加入一个任务，有空闲时立即开始，否则与其他等待的任务按大小排队
+     *
+     * @param size 分段的字节数，越大越先开始；为负数时排在全部分段之后（如建立日期索引，只为下次分析）
+     * @return 任务的结果；任务抛出的异常以 ExecutionException 给出，{@link #cancel()} 后尚未完成的任务抛出 CancellationException
+     */
+    <T> CompletableFuture<T> submit(long size, Callable<T> task)
+    {
+        Pending<T> pending;
+        synchronized (this)
+        {
+            pending = new Pending<>(size, sequence++, task);
+            waiting.add(pending);
+        }
+        dispatch();
+        return pending.future;
+    }
+
+    /**
+     * 取消全部尚未完成的任务：等待结果的线程随即返回，不必等已开始的任务结束；已开始的任务由线程池的 shutdownNow 中断
+     */
+    void cancel()
+    {
+        synchronized (this)
+        {
+            for (Pending<?> pending : waiting)
+            {
+                pending.future.cancel(false);
+            }
+            waiting.clear();
+            // 交给线程池后尚未开始的任务可能被 shutdownNow 丢弃，其结果也要在这里结束
+            for (Pending<?> pending : running)
+            {
+                pending.future.cancel(false);
+            }
+        }
+    }
+
+    private void dispatch()
+    {
+        while (true)
+        {
+            Pending<?> next;
+            synchronized (this)
+            {
+                if (running.size() >= slots || waiting.isEmpty())
+                    return;
+                next = waiting.poll();
+                running.add(next);
+            }
+            try
+            {
+                executor.execute(() -> {
+                    try
+                    {
+                        next.run();
+                    } finally
+                    {
+                        synchronized (this)
+                        {
+                            running.remove(next);
+                        }
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e)
+            {
+                // 取消时线程池已关闭
+                synchronized (this)
+                {
+                    running.remove(next);
+                }
+                next.future.cancel(false);
+                cancel();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 等待开始的任务
+     */
+    private static final class Pending<T>
+    {
+        final long size;
+        final long sequence;
+        final Callable<T> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Pending(long size, long sequence, Callable<T> task)
+        {
+            this.size = size;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        void run()
+        {
+            try
+            {
+                future.complete(task.call());
+            } catch (Throwable e)
+            {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.idea;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @ClassName: StatsCube
+ * @Description: 用户 × 统计单元 × 指标 的计数立方体，替代原先三层嵌套的 HashMap。<br>
+ *      用户名映射为从0开始的整数编号（按首次出现的顺序），统计单元为相对窗口起点的序号，指标为 {@link Metric} 的序号，
+ *      全部计数存放在一个 long[] 中，累加时没有装箱，也不会为每个日期、每个指标创建对象。
+ *      扫描日志时先按天计数（便于保存断点、复用），合并时再归入日或月的统计单元。
+ * @Author: yuanbao
+ * @Date: 2025/3/27
+ **/
+final class StatsCube
+{
+    /**
+     * 统计指标，顺序即在计数数组中的下标
+     */
+    enum Metric
+    {
+        TOTAL,          // 总记录数
+        COSY_ACTION,    // 通义灵码-写代码
+        COSY_SELECT,    // 通义灵码-提问
+        COPILOT_ACTION, // Copilot-写代码
+        COPILOT_SELECT  // Copilot-提问
+    }
+
+    // 指标个数
+    static final int METRIC_COUNT = Metric.values().length;
+
+    private final int buckets; // 统计单元个数
+    private final Map<String, Integer> userIds = new HashMap<>();
+    private final List<String> userNames = new ArrayList<>();
+    private long[] counts = new long[0]; // 下标为 (用户 * buckets + 统计单元) * METRIC_COUNT + 指标
+
+    StatsCube(int buckets)
+    {
+        this.buckets = buckets;
+    }
+
+    /**
+     * 单个用户在 slots 个统计单元（或天）上的计数数组长度，扫描各日志分段时使用同样布局的局部计数数组
+     */
+    static int sliceLength(int slots)
+    {
+        return slots * METRIC_COUNT;
+    }
+
+    /**
+     * 用户局部计数数组中某统计单元（或天）某指标的下标
+     */
+    static int index(int slot, Metric metric)
+    {
+        return index(slot, metric.ordinal());
+    }
+
+    static int index(int slot, int metric)
+    {
+        return slot * METRIC_COUNT + metric;
+    }
+
+    /**
+     * 取得用户编号，首次出现的用户分配新编号
+     */
+    int internUser(String userName)
+    {
+        Integer id = userIds.get(userName);
+        if (id != null)
+            return id;
+        id = userNames.size();
+        userIds.put(userName, id);
+        userNames.add(userName);
+        if (counts.length < userNames.size() * sliceLength(buckets))
+        {
+            long[] grown = new long[Math.max(counts.length * 2, userNames.size() * sliceLength(buckets))];
+            System.arraycopy(counts, 0, grown, 0, counts.length);
+            counts = grown;
+        }
+        return id;
+    }
+
+    int userCount()
+    {
+        return userNames.size();
+    }
+
+    String userName(int user)
+    {
+        return userNames.get(user);
+    }
+
+    int bucketCount()
+    {
+        return buckets;
+    }
+
+    /**
+     * 将以天为单位的局部计数（下标相对窗口第一天）按窗口的统计单元累加到该用户名下
+     */
+    void addUserDays(int user, long[] days, AnalysisWindow window)
+    {
+        addUserDays(user, days, window, window);
+    }
+
+    /**
+     * 将扫描窗口上以天为单位的局部计数（下标相对扫描窗口第一天）按统计窗口的统计单元累加到该用户名下，统计窗口之外的天忽略
+     */
+    void addUserDays(int user, long[] days, AnalysisWindow scanWindow, AnalysisWindow window)
+    {
+        int base = user * sliceLength(buckets);
+        int from = Math.max(scanWindow.getFirstDay(), window.getFirstDay());
+        int to = Math.min(scanWindow.getLastDay(), window.getLastDay());
+        for (int day = from; day <= to; day++)
+        {
+            int source = index(day - scanWindow.getFirstDay(), 0);
+            int target = base + index(window.bucketOf(day), 0);
+            for (int m = 0; m < METRIC_COUNT; m++)
+            {
+                counts[target + m] += days[source + m];
+            }
+        }
+    }
+
+    /**
+     * 将与统计单元一一对应的局部计数（如一天各时段的计数）直接累加到该用户名下
+     */
+    void addUserSlice(int user, long[] slice)
+    {
+        int base = user * sliceLength(buckets);
+        for (int i = 0; i < slice.length; i++)
+        {
+            counts[base + i] += slice[i];
+        }
+    }
+
+    long get(int user, int bucket, Metric metric)
+    {
+        return counts[user * sliceLength(buckets) + index(bucket, metric)];
+    }
+}
@@ -0,0 +1,47 @@
+package com.idea;
+
+/**
+ * @ClassName: TimeSlots
+ * @Description: 一天内的时段划分，用于统计各时段的AI插件使用次数（--histogram）。<br>
+ *      时段按固定分钟数等分一天，如60分钟为24个时段、15分钟为96个时段；时段序号即计数数组中的下标，不创建对象。
+ * @Author: yuanbao
+ * @Date: 2025/4/7
+ **/
+final class TimeSlots
+{
+    // 一天的分钟数
+    static final int MINUTES_PER_DAY = 24 * 60;
+
+    private TimeSlots()
+    {
+    }
+
+    /**
+     * 一天的时段数
+     */
+    static int count(int slotMinutes)
+    {
+        return MINUTES_PER_DAY / slotMinutes;
+    }
+
+    /**
+     * 某分钟所在的时段序号
+     *
+     * @param minuteOfDay 当天的分钟数，见 {@link LogDateParser#parseMinuteOfDay}
+     * @return 时段序号；没有时间时返回-1
+     */
+    static int slotOf(int minuteOfDay, int slotMinutes)
+    {
+        return minuteOfDay == LogDateParser.NO_TIME ? -1 : minuteOfDay / slotMinutes;
+    }
+
+    /**
+     * 时段在报告中的文字，如 09:00-10:00、09:15-09:30
+     */
+    static String label(int slot, int slotMinutes)
+    {
+        int from = slot * slotMinutes;
+        int to = from + slotMinutes;
+        return String.format("%02d:%02d-%02d:%02d", from / 60, from % 60, to / 60, to % 60);
+    }
+}
@@ -0,0 +1,83 @@
+package com.idea;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @ClassName: EventRulesTest
+ * @Description: 正则规则预筛选字符串的提取
+ * @Author: yuanbao
+ * @Date: 2025/4/20
+ **/
+public class EventRulesTest
+{
+    @Test
+    public void plainLiteral()
+    {
+        assertEquals("completions", EventRules.requiredLiteral("completions"));
+        assertEquals(".com/chat/completions", EventRules.requiredLiteral("api\\.[a-z]+\\.com/chat/completions"));
+    }
+
+    @Test
+    public void quantifierBodyIsNotLiteral()
+    {
+        // 量词前的字符可能不出现，量词内容不是字面字符
+        assertEquals("fo", EventRules.requiredLiteral("foo{2,3}"));
+        assertEquals("abc", EventRules.requiredLiteral("x{3}abc"));
+        assertEquals(" request", EventRules.requiredLiteral("id=\\d{1,8} request"));
+    }
+
+    @Test
+    public void optionalAndRepeated()
+    {
+        assertEquals("action", EventRules.requiredLiteral("actions?"));
+        assertEquals("select", EventRules.requiredLiteral("a*select"));
+        // '+' 修饰的字符至少出现一次，其后的内容不与之相连
+        assertEquals("query", EventRules.requiredLiteral("ab+query"));
+    }
+
+    @Test
+    public void escapedMetaCharacters()
+    {
+        assertEquals("a.b(c)", EventRules.requiredLiteral("a\\.b\\(c\\)"));
+        assertEquals(" path", EventRules.requiredLiteral("\\d+ path"));
+    }
+
+    @Test
+    public void multiCharacterEscapes()
+    {
+        assertEquals("name", EventRules.requiredLiteral("\\p{Alpha}name"));
+        assertEquals("name", EventRules.requiredLiteral("\\pLname"));
+        assertEquals("BC", EventRules.requiredLiteral("\\x41BC"));
+        assertEquals("end", EventRules.requiredLiteral("\\x{263A}end"));
+        assertEquals("BC", EventRules.requiredLiteral("\\u0041BC"));
+        assertEquals("89", EventRules.requiredLiteral("\\012389"));
+        assertEquals("tail", EventRules.requiredLiteral("(?<id>\\d+)-\\k<id>tail"));
+    }
+
+    @Test
+    public void characterClassIsSkipped()
+    {
+        assertEquals("select", EventRules.requiredLiteral("[]a-z]select"));
+        assertEquals("done", EventRules.requiredLiteral("[^\\]x]done"));
+    }
+
+    @Test
+    public void alternation()
+    {
+        // 最外层的分支没有必定出现的字符串
+        assertNull(EventRules.requiredLiteral("cosy|copilot"));
+        // 分组内的分支只跳过分组
+        assertEquals("/completions", EventRules.requiredLiteral("(chat|code)/completions"));
+    }
+
+    @Test
+    public void unsupported()
+    {
+        assertNull(EventRules.requiredLiteral("(?i)select"));
+        assertNull(EventRules.requiredLiteral("\\Qa.b\\E"));
+        assertNull(EventRules.requiredLiteral("\\d+"));
+    }
+}
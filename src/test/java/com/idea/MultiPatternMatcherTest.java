@@ -0,0 +1,75 @@
+package com.idea;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @ClassName: MultiPatternMatcherTest
+ * @Description: 多关键字匹配：跳过非关键字开头的字符后，字符和字节上的结果都应与逐个查找相同
+ * @Author: yuanbao
+ * @Date: 2025/4/20
+ **/
+public class MultiPatternMatcherTest
+{
+    private static final String[] LINES = {
+            "2025-03-10 10:00:00 INFO .CosyEditorActionHandler - execute action:EditorTab",
+            "2025-03-10 10:00:01 INFO Select model is qwen, 请求 https://api.example.com/chat/completions",
+            "abcabd 中文abc",
+            "",
+            "ab",
+            "xxay bba xa"};
+
+    @Test
+    public void fewPatterns()
+    {
+        check("abd", "中文", "completions", "EditorTab");
+    }
+
+    @Test
+    public void manyPatterns()
+    {
+        check("abd", "中文", "completions", "EditorTab", "Select model is", "bc", "不出现");
+    }
+
+    @Test
+    public void firstCharInsideOtherPattern()
+    {
+        // a 是 ab 的首字符，也出现在 ba、xay 的中间
+        check("ab", "ba", "xay", "y");
+    }
+
+    @Test
+    public void overlappingPatterns()
+    {
+        MultiPatternMatcher matcher = new MultiPatternMatcher("abc", "bca", "ab");
+        assertEquals(0b101L, matcher.match("xabcx"));
+        assertEquals(0b111L, matcher.match("abca"));
+        assertEquals(0b100L, matcher.match("ab"));
+    }
+
+    /**
+     * 每行的结果与逐个 String.contains 相同
+     */
+    private static void check(String... patterns)
+    {
+        MultiPatternMatcher chars = new MultiPatternMatcher(patterns);
+        MultiPatternMatcher bytes = MultiPatternMatcher.forUtf8Bytes(patterns);
+        for (String line : LINES)
+        {
+            long expected = 0L;
+            for (int p = 0; p < patterns.length; p++)
+            {
+                if (line.contains(patterns[p]))
+                    expected |= 1L << p;
+            }
+            byte[] buf = ("前缀" + line + "\n").getBytes(StandardCharsets.UTF_8);
+            int from = "前缀".getBytes(StandardCharsets.UTF_8).length;
+            assertEquals(expected, chars.match(line));
+            assertEquals(expected, chars.match(new StringBuilder(line)));
+            assertEquals(expected, bytes.match(buf, from, buf.length - 1));
+        }
+    }
+}
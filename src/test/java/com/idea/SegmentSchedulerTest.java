@@ -0,0 +1,105 @@
+package com.idea;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @ClassName: SegmentSchedulerTest
+ * @Description: 分段调度：线程池忙时后加入的大段排到先加入的小段前面，取消时尚未完成的任务随即结束
+ * @Author: yuanbao
+ * @Date: 2025/4/21
+ **/
+public class SegmentSchedulerTest
+{
+    @Test
+    public void largestFirstAcrossSubmissions() throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try
+        {
+            SegmentScheduler scheduler = new SegmentScheduler(pool, 1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<Long> order = Collections.synchronizedList(new ArrayList<>());
+            // 第一个任务占住唯一的线程，其余的分几次加入
+            CompletableFuture<Long> first = scheduler.submit(2, () -> {
+                release.await();
+                return 2L;
+            });
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (long size : new long[] { 1, 5, -1, 3, 5 })
+            {
+                futures.add(scheduler.submit(size, () -> {
+                    order.add(size);
+                    return size;
+                }));
+            }
+            release.countDown();
+            first.get();
+            for (CompletableFuture<Long> future : futures)
+            {
+                future.get();
+            }
+            assertEquals(Arrays.asList(5L, 5L, 3L, 1L, -1L), order);
+        } finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelUnfinishedTasks() throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try
+        {
+            SegmentScheduler scheduler = new SegmentScheduler(pool, 1);
+            CompletableFuture<Integer> running = scheduler.submit(10, () -> {
+                release.await();
+                return 1;
+            });
+            CompletableFuture<Integer> waiting = scheduler.submit(5, () -> 2);
+            scheduler.cancel();
+            // 正在执行的任务尚未结束，等待结果的线程也随即返回
+            assertTrue(isCancelled(waiting));
+            assertTrue(isCancelled(running));
+        } finally
+        {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectedAfterShutdown() throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        pool.shutdownNow();
+        SegmentScheduler scheduler = new SegmentScheduler(pool, 1);
+        assertTrue(isCancelled(scheduler.submit(1, () -> 1)));
+    }
+
+    private static boolean isCancelled(CompletableFuture<?> future) throws Exception
+    {
+        try
+        {
+            future.get();
+            return false;
+        } catch (CancellationException e)
+        {
+            return true;
+        }
+    }
+}